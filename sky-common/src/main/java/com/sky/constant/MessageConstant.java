@@ -23,5 +23,11 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ORDER_SUBMIT_TOKEN_INVALID = "下单令牌无效或已过期";
+    public static final String ORDER_SUBMITTING = "订单正在提交，请勿重复提交";
+    public static final String ORDER_ITEM_NOT_ON_SALE = "商品已停售：";
+    public static final String ORDER_CURSOR_INCOMPLETE = "分页游标不完整，需同时传入上一页最后一条订单的下单时间和id";
+    public static final String WORKSPACE_QUERY_TIMEOUT = "工作台数据查询超时，请稍后重试";
+    public static final String WORKSPACE_QUERY_BUSY = "工作台数据查询繁忙，请稍后重试";
 
 }
@@ -0,0 +1,35 @@
+package com.sky.context;
+
+public class TaskContext {
+
+    public static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
+
+    public static ThreadLocal<String> nameThreadLocal = new ThreadLocal<>();
+
+    public static void setTask(String name, Long token) {
+        nameThreadLocal.set(name);
+        threadLocal.set(token);
+    }
+
+    /**
+     * 当前执行的分布式任务名，不在分布式任务中时为null
+     * @return
+     */
+    public static String getTaskName() {
+        return nameThreadLocal.get();
+    }
+
+    /**
+     * 当前分布式任务持有锁的fencing token，每次加锁递增，写入时用于拒绝过期持有者
+     * @return
+     */
+    public static Long getFencingToken() {
+        return threadLocal.get();
+    }
+
+    public static void removeTask() {
+        nameThreadLocal.remove();
+        threadLocal.remove();
+    }
+
+}
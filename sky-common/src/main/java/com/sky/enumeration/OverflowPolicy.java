@@ -0,0 +1,23 @@
+package com.sky.enumeration;
+
+/**
+ * WebSocket发送队列已满时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃最早的消息
+     */
+    DROP_OLDEST,
+
+    /**
+     * 丢弃新消息
+     */
+    DROP_NEWEST,
+
+    /**
+     * 关闭连接
+     */
+    CLOSE
+
+}
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 分布式任务的租约已被其它节点接手，当前节点的写入被拒绝
+ */
+public class TaskFencedException extends BaseException {
+
+    public TaskFencedException(String msg) {
+        super(msg);
+    }
+
+}
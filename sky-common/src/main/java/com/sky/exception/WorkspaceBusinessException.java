@@ -0,0 +1,9 @@
+package com.sky.exception;
+
+public class WorkspaceBusinessException extends BaseException {
+
+    public WorkspaceBusinessException(String msg) {
+        super(msg);
+    }
+
+}
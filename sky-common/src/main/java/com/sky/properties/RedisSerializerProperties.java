@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.redis-serializer")
+@Data
+public class RedisSerializerProperties {
+
+    /**
+     * value的序列化格式：jdk、json、smile（二进制json）
+     */
+    private String format = "smile";
+
+    /**
+     * 序列化结果超过该字节数时使用LZ4压缩，小于等于0表示不压缩
+     */
+    private int compressThreshold = 1024;
+
+}
@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.replica")
+@Data
+public class ReplicaProperties {
+
+    /**
+     * 从库允许的最大复制延迟，单位秒，超过后只读查询改为读主库
+     */
+    private long maxLagSeconds = 3;
+
+    /**
+     * 检查从库延迟的间隔，单位秒
+     */
+    private long checkIntervalSeconds = 5;
+
+}
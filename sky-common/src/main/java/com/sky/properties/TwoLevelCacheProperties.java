@@ -0,0 +1,43 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache")
+@Data
+public class TwoLevelCacheProperties {
+
+    /**
+     * 一级缓存（本地Caffeine）每个缓存的最大条数
+     */
+    private long localMaximumSize = 1000;
+
+    /**
+     * 一级缓存写入后的过期时间，单位秒
+     */
+    private long localExpireSeconds = 60;
+
+    /**
+     * 二级缓存（Redis）的过期时间，单位秒，必须大于0
+     * 清空缓存只递增版本号，旧版本的key依靠过期时间回收
+     */
+    private long redisExpireSeconds = 86400;
+
+    /**
+     * 各节点之间广播缓存失效消息的Redis频道
+     */
+    private String invalidationChannel = "cache_invalidation";
+
+    /**
+     * 热点key提前刷新的线程数，所有缓存共用
+     */
+    private int refreshThreads = 2;
+
+    /**
+     * 提前刷新任务的队列长度，队列满时放弃本次刷新，等下次命中时再判断
+     */
+    private int refreshQueueCapacity = 100;
+
+}
@@ -0,0 +1,48 @@
+package com.sky.properties;
+
+import com.sky.enumeration.OverflowPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 每个连接待发送消息队列的容量
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * 队列已满时的处理策略
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * 各节点之间转发WebSocket通知的Redis频道
+     */
+    private String notificationChannel = "websocket_notification";
+
+    /**
+     * 每次转发的最大消息条数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 积压消息的转发间隔，单位毫秒
+     */
+    private long batchIntervalMillis = 50;
+
+    /**
+     * 发送ping的间隔，单位秒
+     */
+    private long heartbeatIntervalSeconds = 30;
+
+    /**
+     * 超过该时长未收到客户端消息或pong则关闭连接，单位秒
+     */
+    private long idleTimeoutSeconds = 90;
+
+}
@@ -0,0 +1,28 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.workspace")
+@Data
+public class WorkspaceProperties {
+
+    /**
+     * 并发执行工作台统计查询的线程数
+     * 每个线程执行查询时占用一个数据库连接，应明显小于连接池的最大连接数，给下单等业务留出连接
+     */
+    private int threads = 4;
+
+    /**
+     * 等待执行的查询队列容量，队列已满时直接拒绝，不再堆积
+     */
+    private int queueCapacity = 50;
+
+    /**
+     * 等待全部查询完成的超时时间，单位毫秒
+     */
+    private long timeoutMillis = 3000;
+
+}
@@ -0,0 +1,107 @@
+package com.sky.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮
+ * 延时任务按到期时间放入对应的槽，每个刻度只检查一个槽，添加任务的开销与任务总数无关
+ */
+@Slf4j
+public class HashedTimingWheel {
+
+    private final long tickMillis;
+    private final List<List<Timeout>> wheel;
+    //新添加的任务先放入队列，由时间轮线程在每个刻度转入槽中，槽本身只被单线程访问
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService executor;
+    private final long startTime;
+    private long tick;
+
+    /**
+     * @param tickMillis 每个刻度的时长，单位毫秒
+     * @param wheelSize 槽的数量
+     * @param threadName 时间轮线程名
+     */
+    public HashedTimingWheel(long tickMillis, int wheelSize, String threadName) {
+        this.tickMillis = tickMillis;
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startTime = System.currentTimeMillis();
+        executor.scheduleAtFixedRate(this::onTick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 添加延时任务，任务在时间轮线程中执行，应尽快返回
+     * @param task
+     * @param delayMillis
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        pending.offer(new Timeout(task, System.currentTimeMillis() + Math.max(delayMillis, 0)));
+    }
+
+    /**
+     * 停止时间轮，未到期的任务不再执行
+     */
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void onTick() {
+        tick++;
+        transferPending();
+
+        List<Timeout> bucket = wheel.get((int) (tick % wheel.size()));
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            iterator.remove();
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                log.error("时间轮任务执行失败", e);
+            }
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            //到期时间对应的刻度，已过期的任务放到当前刻度
+            long expireTick = Math.max((timeout.deadline - startTime + tickMillis - 1) / tickMillis, tick);
+            long remaining = expireTick - tick;
+            timeout.rounds = remaining / wheel.size();
+            wheel.get((int) (expireTick % wheel.size())).add(timeout);
+        }
+    }
+
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
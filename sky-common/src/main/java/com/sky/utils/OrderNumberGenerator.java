@@ -0,0 +1,109 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成器，Snowflake结构：41位毫秒时间戳 + 10位节点id + 12位序列号
+ * 同一节点内通过CAS无锁生成，不同节点的节点id不同，生成的订单号全局唯一且按时间递增
+ * 节点id通过租约独占时，超过租约有效期（续约失败或已被其它节点占用）后拒绝生成，直到重新取得租约
+ */
+public class OrderNumberGenerator {
+
+    //起始时间 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private volatile long workerId;
+
+    //节点id的有效期（毫秒时间戳），固定配置的节点id永久有效
+    private volatile long validUntil = Long.MAX_VALUE;
+
+    //高位为时间戳，低12位为序列号
+    private final AtomicLong state = new AtomicLong();
+
+    public OrderNumberGenerator(long workerId) {
+        checkWorkerId(workerId);
+        this.workerId = workerId;
+    }
+
+    /**
+     * 生成订单号
+     * @return
+     */
+    public String nextNumber() {
+        return String.valueOf(nextId());
+    }
+
+    /**
+     * 生成id
+     * 同一毫秒内序列号用尽或系统时钟回拨时，直接使用上一个时间戳加一，不等待时钟，因此不会阻塞
+     * @return
+     */
+    public long nextId() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            long millis = System.currentTimeMillis();
+            if (millis > validUntil) {
+                throw new IllegalStateException("order number worker id " + workerId + " is not leased");
+            }
+            long now = millis - EPOCH;
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                //序列号溢出时进位到时间戳
+                next = current + 1;
+            }
+        } while (!state.compareAndSet(current, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return (timestamp << (WORKER_ID_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * 续约成功后延长节点id的有效期，传入0时立即停止生成
+     * @param validUntil 毫秒时间戳
+     */
+    public void setValidUntil(long validUntil) {
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * 原节点id的租约已被其它节点占用，改用新租到的节点id
+     * 时间戳和序列号继续递增，新旧节点id生成的id不会重复
+     * @param workerId
+     * @param validUntil 毫秒时间戳
+     */
+    public void reassign(long workerId, long validUntil) {
+        checkWorkerId(workerId);
+        this.workerId = workerId;
+        this.validUntil = validUntil;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 最近一次生成的id所用的毫秒时间戳，序列号用尽时可能超前于系统时钟
+     * 释放节点id前需要等到系统时钟超过该时间，否则下一个持有者可能生成相同的id
+     * @return
+     */
+    public long getLastTimestampMillis() {
+        return (state.get() >>> SEQUENCE_BITS) + EPOCH;
+    }
+
+    private static void checkWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be between 0 and " + MAX_WORKER_ID);
+        }
+    }
+}
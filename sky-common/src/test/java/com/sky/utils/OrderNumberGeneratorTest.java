@@ -0,0 +1,187 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderNumberGeneratorTest {
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    //限速压测的目标速率和持续时间
+    private static final long TARGET_RATE = 1_000_000;
+    private static final long DURATION_MILLIS = 2000;
+
+    @Test
+    void idsAreUniqueUnderContention() throws Exception {
+        OrderNumberGenerator generator = new OrderNumberGenerator(1);
+        int threads = 8;
+        int perThread = 20000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                Callable<long[]> task = () -> {
+                    start.await();
+                    long[] ids = new long[perThread];
+                    for (int j = 0; j < perThread; j++) {
+                        ids[j] = generator.nextId();
+                    }
+                    return ids;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+
+            Set<Long> all = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int j = 0; j < ids.length; j++) {
+                    //同一线程内按生成顺序递增
+                    if (j > 0) {
+                        assertTrue(ids[j] > ids[j - 1]);
+                    }
+                    all.add(ids[j]);
+                }
+            }
+            assertEquals(threads * perThread, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sequenceOverflowCarriesIntoTimestamp() {
+        long workerId = OrderNumberGenerator.MAX_WORKER_ID;
+        OrderNumberGenerator generator = new OrderNumberGenerator(workerId);
+
+        //连续生成直到多次用尽单毫秒的4096个序列号
+        int maxCount = 5000000;
+        long previous = -1;
+        int overflows = 0;
+        for (int i = 0; i < maxCount && overflows < 3; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertEquals(workerId, (id >>> SEQUENCE_BITS) & OrderNumberGenerator.MAX_WORKER_ID);
+            if (previous >= 0 && (previous & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                //序列号用尽后下一个id进位到下一毫秒，序列号从0开始
+                assertEquals(0, id & SEQUENCE_MASK);
+                overflows++;
+            }
+            previous = id;
+        }
+        assertTrue(overflows > 0);
+    }
+
+    @Test
+    void rejectsWorkerIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderNumberGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new OrderNumberGenerator(OrderNumberGenerator.MAX_WORKER_ID + 1));
+    }
+
+    /**
+     * 按每秒100万个的速率持续生成，验证达到目标速率且没有重复id
+     */
+    @Test
+    void sustainsOneMillionIdsPerSecondWithoutDuplicates() throws Exception {
+        OrderNumberGenerator generator = new OrderNumberGenerator(1);
+        int threads = 4;
+        long perThreadRate = TARGET_RATE / threads;
+        int capacity = (int) (perThreadRate * DURATION_MILLIS / 1000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                Callable<long[]> task = () -> {
+                    start.await();
+                    long[] ids = new long[capacity];
+                    int count = 0;
+                    long begin = System.nanoTime();
+                    while (count < capacity) {
+                        //按已经过的时间计算应生成的数量，超前时让出CPU
+                        long elapsed = System.nanoTime() - begin;
+                        long expected = Math.min(elapsed * perThreadRate / TimeUnit.SECONDS.toNanos(1), capacity);
+                        if (count >= expected) {
+                            Thread.yield();
+                            continue;
+                        }
+                        while (count < expected) {
+                            ids[count++] = generator.nextId();
+                        }
+                    }
+                    return ids;
+                };
+                futures.add(executor.submit(task));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+
+            long[] all = new long[capacity * threads];
+            int offset = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                System.arraycopy(ids, 0, all, offset, ids.length);
+                offset += ids.length;
+            }
+            long elapsedNanos = System.nanoTime() - begin;
+            double rate = all.length * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            System.out.printf("generated %d ids in %d ms, %.0f ids/s%n",
+                    all.length, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rate);
+
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                assertTrue(all[i] != all[i - 1], "duplicate id " + all[i]);
+            }
+            //限速本身会带来少量调度误差，达到目标速率的90%即可
+            assertTrue(rate >= TARGET_RATE * 0.9, "rate " + rate + " ids/s");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void refusesAfterLeaseExpires() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(1);
+        generator.nextId();
+
+        generator.setValidUntil(System.currentTimeMillis() - 1);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        generator.setValidUntil(System.currentTimeMillis() + 60000);
+        generator.nextId();
+    }
+
+    @Test
+    void reassignedWorkerIdKeepsIdsIncreasing() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(1);
+        long before = generator.nextId();
+
+        generator.setValidUntil(0);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        generator.reassign(2, Long.MAX_VALUE);
+        long after = generator.nextId();
+        assertTrue(after > before);
+        assertEquals(2, (after >>> SEQUENCE_BITS) & OrderNumberGenerator.MAX_WORKER_ID);
+        assertTrue(generator.getLastTimestampMillis() <= System.currentTimeMillis() + 1);
+    }
+}
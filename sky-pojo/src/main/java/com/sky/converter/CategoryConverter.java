@@ -0,0 +1,17 @@
+package com.sky.converter;
+
+import com.sky.dto.CategoryDTO;
+import com.sky.entity.Category;
+import org.mapstruct.Mapper;
+import org.mapstruct.factory.Mappers;
+
+/**
+ * 分类相关对象转换，实现类在编译期生成
+ */
+@Mapper(config = ConverterConfig.class)
+public interface CategoryConverter {
+
+    CategoryConverter INSTANCE = Mappers.getMapper(CategoryConverter.class);
+
+    Category toCategory(CategoryDTO categoryDTO);
+}
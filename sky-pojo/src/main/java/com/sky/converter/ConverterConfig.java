@@ -0,0 +1,13 @@
+package com.sky.converter;
+
+import org.mapstruct.Builder;
+import org.mapstruct.MapperConfig;
+import org.mapstruct.ReportingPolicy;
+
+/**
+ * 对象转换的公共配置
+ * 不使用Lombok生成的builder，通过无参构造和setter赋值，保留字段上的默认值，与BeanUtils.copyProperties行为一致
+ */
+@MapperConfig(unmappedTargetPolicy = ReportingPolicy.IGNORE, builder = @Builder(disableBuilder = true))
+public interface ConverterConfig {
+}
@@ -0,0 +1,25 @@
+package com.sky.converter;
+
+import com.sky.dto.DishDTO;
+import com.sky.entity.Dish;
+import com.sky.vo.DishVO;
+import org.mapstruct.Mapper;
+import org.mapstruct.factory.Mappers;
+
+/**
+ * 菜品相关对象转换，实现类在编译期生成
+ */
+@Mapper(config = ConverterConfig.class)
+public interface DishConverter {
+
+    DishConverter INSTANCE = Mappers.getMapper(DishConverter.class);
+
+    Dish toDish(DishDTO dishDTO);
+
+    /**
+     * 菜品转为菜品VO，口味需另外设置
+     * @param dish
+     * @return
+     */
+    DishVO toDishVO(Dish dish);
+}
@@ -0,0 +1,17 @@
+package com.sky.converter;
+
+import com.sky.dto.EmployeeDTO;
+import com.sky.entity.Employee;
+import org.mapstruct.Mapper;
+import org.mapstruct.factory.Mappers;
+
+/**
+ * 员工相关对象转换，实现类在编译期生成
+ */
+@Mapper(config = ConverterConfig.class)
+public interface EmployeeConverter {
+
+    EmployeeConverter INSTANCE = Mappers.getMapper(EmployeeConverter.class);
+
+    Employee toEmployee(EmployeeDTO employeeDTO);
+}
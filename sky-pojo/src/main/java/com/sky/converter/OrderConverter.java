@@ -0,0 +1,42 @@
+package com.sky.converter;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.entity.ShoppingCart;
+import com.sky.vo.OrderVO;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.factory.Mappers;
+
+/**
+ * 订单相关对象转换，实现类在编译期生成
+ */
+@Mapper(config = ConverterConfig.class)
+public interface OrderConverter {
+
+    OrderConverter INSTANCE = Mappers.getMapper(OrderConverter.class);
+
+    /**
+     * 订单转为订单VO，订单菜品和订单明细需另外设置
+     * @param orders
+     * @return
+     */
+    OrderVO toOrderVO(Orders orders);
+
+    /**
+     * 购物车商品转为订单明细，订单id需另外设置
+     * @param shoppingCart
+     * @return
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "orderId", ignore = true)
+    OrderDetail toOrderDetail(ShoppingCart shoppingCart);
+
+    /**
+     * 订单明细转为购物车商品，用于再来一单，用户id和创建时间需另外设置
+     * @param orderDetail
+     * @return
+     */
+    @Mapping(target = "id", ignore = true)
+    ShoppingCart toShoppingCart(OrderDetail orderDetail);
+}
@@ -0,0 +1,25 @@
+package com.sky.converter;
+
+import com.sky.dto.SetmealDTO;
+import com.sky.entity.Setmeal;
+import com.sky.vo.SetmealVO;
+import org.mapstruct.Mapper;
+import org.mapstruct.factory.Mappers;
+
+/**
+ * 套餐相关对象转换，实现类在编译期生成
+ */
+@Mapper(config = ConverterConfig.class)
+public interface SetmealConverter {
+
+    SetmealConverter INSTANCE = Mappers.getMapper(SetmealConverter.class);
+
+    Setmeal toSetmeal(SetmealDTO setmealDTO);
+
+    /**
+     * 套餐转为套餐VO，套餐菜品需另外设置
+     * @param setmeal
+     * @return
+     */
+    SetmealVO toSetmealVO(Setmeal setmeal);
+}
@@ -0,0 +1,41 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 一次扫描得到的各状态订单数
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OrderStatusBucketDTO implements Serializable {
+    //订单总数
+    private Integer total;
+
+    //待付款
+    private Integer pendingPayment;
+
+    //待接单
+    private Integer toBeConfirmed;
+
+    //已接单
+    private Integer confirmed;
+
+    //派送中
+    private Integer deliveryInProgress;
+
+    //已完成
+    private Integer completed;
+
+    //已取消
+    private Integer cancelled;
+
+    //营业额，已完成订单的总金额
+    private Double turnover;
+}
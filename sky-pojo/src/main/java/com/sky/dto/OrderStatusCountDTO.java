@@ -0,0 +1,23 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 按状态分组的订单数
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OrderStatusCountDTO implements Serializable {
+    //订单状态
+    private Integer status;
+
+    //订单数
+    private Integer orderCount;
+}
@@ -27,4 +27,13 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //游标分页：page为0或传入游标时，查询下单时间、id小于游标的pageSize条数据，游标为上一页最后一条订单的下单时间和id，两者需同时传入
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime lastOrderTime;
+
+    private Long lastId;
+
+    //是否统计总记录数，默认统计；传false时不统计，total返回-1，连续翻页时可以只在第一页统计
+    private Boolean count;
+
 }
@@ -26,6 +26,8 @@ public class OrdersSubmitDTO implements Serializable {
     private Integer tablewareStatus;
     //打包费
     private Integer packAmount;
-    //总金额
+    //总金额，仅用于与服务端计算的金额比对
     private BigDecimal amount;
+    //下单令牌，防止重复提交
+    private String token;
 }
@@ -0,0 +1,23 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 集群中同一时刻只允许一个节点执行的定时任务
+ * 方法返回数值时作为本次处理的行数计入任务统计
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DistributedTask {
+    //任务名，同名任务共用一把锁
+    String value();
+
+    //锁的租期，单位秒，应大于任务的最长执行时间
+    long leaseSeconds() default 60;
+
+    //任务结束后锁至少保持的时间，单位秒，防止节点间时钟偏差导致同一周期内重复执行
+    long minHoldSeconds() default 0;
+}
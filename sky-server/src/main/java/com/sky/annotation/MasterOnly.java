@@ -0,0 +1,15 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 所有查询都读主库
+ * 用于刚写入就要读取，或者先查询状态再修改的操作，避免从库延迟读到旧数据；标注在类上时对所有方法生效，方法上的注解优先
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MasterOnly {
+}
@@ -0,0 +1,91 @@
+package com.sky.aspect;
+
+import com.sky.annotation.MasterOnly;
+import com.sky.annotation.ReadOnly;
+import com.sky.datasource.DataSourceMetrics;
+import com.sky.datasource.ReplicaLagMonitor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.api.hint.HintManager;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+
+/**
+ * 读写分离路由切面
+ * ShardingSphere默认把查询分发到从库，写操作和同一连接中写操作之后的查询发到主库；
+ * 这里根据注解决定整个方法的查询是否强制读主库，并统计各路由的耗时
+ */
+@Aspect
+@Component
+@Slf4j
+public class DataSourceRoutingAspect {
+
+    @Autowired
+    private ReplicaLagMonitor replicaLagMonitor;
+    @Autowired
+    private DataSourceMetrics dataSourceMetrics;
+
+    @Around("@annotation(com.sky.annotation.ReadOnly) || @within(com.sky.annotation.ReadOnly) " +
+            "|| @annotation(com.sky.annotation.MasterOnly) || @within(com.sky.annotation.MasterOnly)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        //外层已经确定读主库，保持不变
+        if (HintManager.isMasterRouteOnly()) {
+            return joinPoint.proceed();
+        }
+
+        boolean master = isMasterOnly(joinPoint);
+        if (!master) {
+            //事务中由ShardingSphere按是否已写入决定路由，不在这里改为读从库
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                return joinPoint.proceed();
+            }
+            if (!replicaLagMonitor.isReplicaAvailable()) {
+                dataSourceMetrics.recordFallback();
+                master = true;
+            }
+        }
+
+        if (!master) {
+            return proceed(joinPoint, DataSourceMetrics.ROUTE_REPLICA);
+        }
+        try (HintManager hintManager = HintManager.getInstance()) {
+            hintManager.setMasterRouteOnly();
+            return proceed(joinPoint, DataSourceMetrics.ROUTE_MASTER);
+        }
+    }
+
+    private Object proceed(ProceedingJoinPoint joinPoint, String route) throws Throwable {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            Object result = joinPoint.proceed();
+            success = true;
+            return result;
+        } finally {
+            dataSourceMetrics.recordQuery(route, System.currentTimeMillis() - start, success);
+        }
+    }
+
+    /**
+     * 方法上的注解优先于类上的注解
+     */
+    private boolean isMasterOnly(ProceedingJoinPoint joinPoint) {
+        Class<?> targetClass = AopUtils.getTargetClass(joinPoint.getTarget());
+        Method method = AopUtils.getMostSpecificMethod(((MethodSignature) joinPoint.getSignature()).getMethod(), targetClass);
+        if (AnnotationUtils.findAnnotation(method, MasterOnly.class) != null) {
+            return true;
+        }
+        if (AnnotationUtils.findAnnotation(method, ReadOnly.class) != null) {
+            return false;
+        }
+        return AnnotationUtils.findAnnotation(targetClass, MasterOnly.class) != null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.sky.aspect;
+
+import com.sky.annotation.DistributedTask;
+import com.sky.context.TaskContext;
+import com.sky.exception.TaskFencedException;
+import com.sky.task.TaskFence;
+import com.sky.task.TaskMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式定时任务切面，通过Redis租约保证同一任务在集群中只有一个节点执行
+ * 每次加锁生成递增的fencing token，执行期间放入TaskContext，任务中的写入通过TaskFence校验，
+ * 租约过期后被其它节点接手时，过期持有者的写入被拒绝
+ */
+@Aspect
+@Component
+@Slf4j
+public class DistributedTaskAspect {
+
+    //只释放自己持有的锁；需要保持最短时间时改为缩短过期时间
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "if tonumber(ARGV[2]) > 0 then return redis.call('pexpire', KEYS[1], ARGV[2]) end " +
+                    "return redis.call('del', KEYS[1]) " +
+                    "end return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    @Around("@annotation(distributedTask)")
+    public Object around(ProceedingJoinPoint joinPoint, DistributedTask distributedTask) throws Throwable {
+        String name = distributedTask.value();
+        String lockKey = TaskFence.getLockKey(name);
+
+        //每次加锁生成递增的fencing token，作为锁的值
+        Long fencingToken = stringRedisTemplate.opsForValue().increment(lockKey + "::fencing");
+        String token = String.valueOf(fencingToken);
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(lockKey, token, distributedTask.leaseSeconds(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.debug("任务{}正在其它节点执行，跳过", name);
+            taskMetrics.recordSkipped(name);
+            return skippedResult(joinPoint);
+        }
+
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        Object result = null;
+        TaskContext.setTask(name, fencingToken);
+        try {
+            result = joinPoint.proceed();
+            success = true;
+            return result;
+        } catch (TaskFencedException e) {
+            //租约已被其它节点接手，本次写入已回滚，由新的持有者继续处理
+            log.warn(e.getMessage());
+            return skippedResult(joinPoint);
+        } finally {
+            TaskContext.removeTask();
+            long duration = System.currentTimeMillis() - start;
+            if (duration > TimeUnit.SECONDS.toMillis(distributedTask.leaseSeconds())) {
+                log.warn("任务{}执行{}毫秒，超过锁的租期，可能已被其它节点重复执行", name, duration);
+            }
+
+            long holdMillis = TimeUnit.SECONDS.toMillis(distributedTask.minHoldSeconds()) - duration;
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey),
+                    token, String.valueOf(Math.max(holdMillis, 0)));
+
+            Long rows = result instanceof Number ? ((Number) result).longValue() : null;
+            try {
+                taskMetrics.recordRun(name, fencingToken, duration, rows, success);
+            } catch (RuntimeException e) {
+                log.error("记录任务{}执行统计失败", name, e);
+            }
+        }
+    }
+
+    /**
+     * 跳过执行时的返回值，返回基本类型的方法不能返回null
+     */
+    private Object skippedResult(ProceedingJoinPoint joinPoint) {
+        Class<?> returnType = ((MethodSignature) joinPoint.getSignature()).getReturnType();
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.sky.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 缓存条目，除缓存值外记录过期时间和加载耗时，用于提前刷新
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //缓存值
+    private Object value;
+
+    //过期时间戳，单位毫秒
+    private long expireAt;
+
+    //加载该值的耗时，单位毫秒
+    private long loadMillis;
+}
@@ -0,0 +1,81 @@
+package com.sky.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 在其它序列化器外层按大小阈值进行LZ4压缩
+ * 数据格式：1字节标记（0未压缩，1已压缩），已压缩时再跟4字节原始长度，之后为数据
+ * 切换格式前以JDK序列化写入的数据（如店铺状态、已有的缓存）没有标记，读取时按JDK序列化还原，过期或重新写入后即为新格式
+ */
+public class Lz4RedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte RAW = 0;
+    private static final byte COMPRESSED = 1;
+    //JDK序列化数据的起始魔数 0xACED
+    private static final byte JDK_MAGIC_FIRST = (byte) 0xAC;
+    private static final byte JDK_MAGIC_SECOND = (byte) 0xED;
+
+    private final RedisSerializer<Object> delegate;
+    private final int threshold;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+    private final JdkSerializationRedisSerializer legacy = new JdkSerializationRedisSerializer();
+
+    public Lz4RedisSerializer(RedisSerializer<Object> delegate, int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes == null) {
+            return null;
+        }
+
+        if (bytes.length < threshold) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + bytes.length);
+            buffer.put(RAW).put(bytes);
+            return buffer.array();
+        }
+
+        byte[] compressed = compressor.compress(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + compressed.length);
+        buffer.put(COMPRESSED).putInt(bytes.length).put(compressed);
+        return buffer.array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte flag = buffer.get();
+        if (flag == RAW) {
+            byte[] raw = new byte[buffer.remaining()];
+            buffer.get(raw);
+            return delegate.deserialize(raw);
+        }
+        if (flag == COMPRESSED) {
+            int length = buffer.getInt();
+            byte[] restored = decompressor.decompress(bytes, buffer.position(), length);
+            return delegate.deserialize(restored);
+        }
+        if (flag == JDK_MAGIC_FIRST && bytes.length > 1 && bytes[1] == JDK_MAGIC_SECOND) {
+            return legacy.deserialize(bytes);
+        }
+        throw new SerializationException("无法识别的缓存数据格式：" + flag);
+    }
+}
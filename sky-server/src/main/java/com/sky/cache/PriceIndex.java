@@ -0,0 +1,299 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 菜品、套餐的价格和起售状态索引，常驻内存，下单时校验和计算金额不需要查询数据库
+ * 后台修改菜品、套餐后刷新本节点并通知其它节点刷新，另外每隔一段时间全量重新加载一次，防止漏掉通知；
+ * 全量加载期间单独刷新过的id会在替换后重新读取一次，避免被加载开始时的旧数据覆盖
+ */
+@Component
+@Slf4j
+public class PriceIndex implements MessageListener, InitializingBean, DisposableBean {
+
+    private static final String CHANNEL = "price_index_invalidation";
+
+    private static final String TYPE_DISH = "dish";
+    private static final String TYPE_SETMEAL = "setmeal";
+    private static final long RELOAD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile Map<Long, Item> dishes;
+    private volatile Map<Long, Item> setmeals;
+    private volatile long loadedAt;
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+
+    //全量加载期间单独刷新过的id
+    private final Set<Long> refreshedDishes = ConcurrentHashMap.newKeySet();
+    private final Set<Long> refreshedSetmeals = ConcurrentHashMap.newKeySet();
+
+    //后台全量加载线程，同一时间最多一个加载任务
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-index-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 价格和起售状态
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Item {
+        private final BigDecimal price;
+        private final Integer status;
+    }
+
+    /**
+     * 查询菜品的价格和状态
+     * @param dishId
+     * @return 菜品不存在时返回null
+     */
+    public Item getDish(Long dishId) {
+        ensureLoaded();
+        Item item = dishes.get(dishId);
+        if (item == null) {
+            //其它节点新增的菜品且未收到通知时，查询一次数据库
+            item = loadDish(dishId);
+        }
+        return item;
+    }
+
+    /**
+     * 查询套餐的价格和状态
+     * @param setmealId
+     * @return 套餐不存在时返回null
+     */
+    public Item getSetmeal(Long setmealId) {
+        ensureLoaded();
+        Item item = setmeals.get(setmealId);
+        if (item == null) {
+            item = loadSetmeal(setmealId);
+        }
+        return item;
+    }
+
+    /**
+     * 菜品已修改，事务提交后刷新本节点并通知其它节点
+     * @param dishIds
+     */
+    public void refreshDishes(List<Long> dishIds) {
+        afterCommit(() -> {
+            dishIds.forEach(this::refreshDish);
+            publish(TYPE_DISH, dishIds);
+        });
+    }
+
+    /**
+     * 套餐已修改，事务提交后刷新本节点并通知其它节点
+     * @param setmealIds
+     */
+    public void refreshSetmeals(List<Long> setmealIds) {
+        afterCommit(() -> {
+            setmealIds.forEach(this::refreshSetmeal);
+            publish(TYPE_SETMEAL, setmealIds);
+        });
+    }
+
+    /**
+     * 监听其它节点发出的刷新通知
+     */
+    @Override
+    public void afterPropertiesSet() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 收到其它节点的通知，重新加载对应的菜品或套餐
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            return;
+        }
+
+        List<Long> ids = body.getJSONArray("ids").toJavaList(Long.class);
+        if (TYPE_DISH.equals(body.getString("type"))) {
+            ids.forEach(this::refreshDish);
+        } else {
+            ids.forEach(this::refreshSetmeal);
+        }
+    }
+
+    /**
+     * 刷新单个菜品，正在全量加载时先记录id，加载完成后再读取一次
+     * 尚未加载过的节点在首次使用时会全量加载，不需要刷新
+     */
+    private void refreshDish(Long dishId) {
+        if (reloading.get()) {
+            refreshedDishes.add(dishId);
+        }
+        if (dishes != null) {
+            loadDish(dishId);
+        }
+    }
+
+    private void refreshSetmeal(Long setmealId) {
+        if (reloading.get()) {
+            refreshedSetmeals.add(setmealId);
+        }
+        if (setmeals != null) {
+            loadSetmeal(setmealId);
+        }
+    }
+
+    private Item loadDish(Long dishId) {
+        Dish dish = dishMapper.getById(dishId);
+        if (dish == null) {
+            dishes.remove(dishId);
+            return null;
+        }
+        Item item = new Item(dish.getPrice(), dish.getStatus());
+        dishes.put(dishId, item);
+        return item;
+    }
+
+    private Item loadSetmeal(Long setmealId) {
+        Setmeal setmeal = setmealMapper.getById(setmealId);
+        if (setmeal == null) {
+            setmeals.remove(setmealId);
+            return null;
+        }
+        Item item = new Item(setmeal.getPrice(), setmeal.getStatus());
+        setmeals.put(setmealId, item);
+        return item;
+    }
+
+    /**
+     * 首次使用时同步加载，之后超过重新加载间隔时在后台重新加载，加载期间继续使用旧数据
+     */
+    private void ensureLoaded() {
+        if (dishes == null) {
+            synchronized (this) {
+                if (dishes == null) {
+                    //首次加载时后台加载还不会开始，这里直接占用标记
+                    reloading.set(true);
+                    try {
+                        reload();
+                    } finally {
+                        reloading.set(false);
+                    }
+                }
+            }
+        } else if (System.currentTimeMillis() - loadedAt > RELOAD_INTERVAL_MILLIS
+                && reloading.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    reload();
+                } catch (RuntimeException e) {
+                    log.error("价格索引重新加载失败", e);
+                } finally {
+                    reloading.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 全量加载并替换，调用前需要占用reloading标记
+     */
+    private void reload() {
+        Map<Long, Item> dishMap = new ConcurrentHashMap<>();
+        for (Dish dish : dishMapper.list(new Dish())) {
+            dishMap.put(dish.getId(), new Item(dish.getPrice(), dish.getStatus()));
+        }
+        Map<Long, Item> setmealMap = new ConcurrentHashMap<>();
+        for (Setmeal setmeal : setmealMapper.list(new Setmeal())) {
+            setmealMap.put(setmeal.getId(), new Item(setmeal.getPrice(), setmeal.getStatus()));
+        }
+
+        setmeals = setmealMap;
+        dishes = dishMap;
+        loadedAt = System.currentTimeMillis();
+
+        //加载期间单独刷新过的id可能比全量数据新，在新数据上重新读取；替换之后的刷新直接写入新数据
+        for (Long dishId : refreshedDishes) {
+            refreshedDishes.remove(dishId);
+            loadDish(dishId);
+        }
+        for (Long setmealId : refreshedSetmeals) {
+            refreshedSetmeals.remove(setmealId);
+            loadSetmeal(setmealId);
+        }
+        log.info("价格索引加载完成，菜品{}个，套餐{}个", dishMap.size(), setmealMap.size());
+    }
+
+    private void publish(String type, List<Long> ids) {
+        JSONObject message = new JSONObject();
+        message.put("nodeId", nodeId);
+        message.put("type", type);
+        message.put("ids", ids);
+        stringRedisTemplate.convertAndSend(CHANNEL, message.toJSONString());
+    }
+
+    /**
+     * 在事务中调用时等事务提交后再执行，保证读到的是提交后的数据
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,393 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二级缓存：一级为进程内Caffeine缓存，二级为Redis
+ * 读取时依次查询本地和Redis，写入和失效同时作用于两级，失效消息通过Redis发布到其它节点
+ * Redis中的key带有版本号（name::v版本号::key），清空缓存时只需INCR版本号，旧版本的key由过期时间自动清理；
+ * 版本号在本地缓存，清空时随失效消息一起失效，读写不再每次额外查询一次Redis；失效消息丢失时，本地版本号最多保留本地缓存的过期时间
+ * 通过get(key, valueLoader)加载时：同一个key在本节点只有一个线程加载，跨节点通过Redis短锁只有一个节点加载；
+ * 临近过期的热点key按概率提前在后台刷新；
+ * 本地缓存每次失效都递增失效计数，加载或读取Redis期间发生过失效时，结果不再写入本地缓存，避免把旧值放回本地
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    //跨节点加载锁的超时时间
+    private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(3);
+    //未抢到锁时轮询Redis的间隔，单位毫秒
+    private static final long LOCK_WAIT_INTERVAL = 50;
+    //提前刷新系数，越大越早刷新
+    private static final double EARLY_REFRESH_BETA = 1.0;
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final String name;
+    private final Cache<String, CacheEntry> localCache;
+    private final RedisTemplate redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration redisTtl;
+    private final TwoLevelCacheManager cacheManager;
+    //本地版本号的有效期，与本地缓存的过期时间一致
+    private final Duration versionTtl;
+    //提前刷新线程池，由缓存管理器创建，所有缓存共用
+    private final Executor refreshExecutor;
+
+    //本地缓存的版本号，为null时需要从Redis读取
+    private volatile LocalVersion localVersion;
+
+    //本地缓存的失效次数，本节点清理或收到其它节点的失效消息时递增
+    private final AtomicLong invalidations = new AtomicLong();
+
+    //本节点正在加载的key
+    private final ConcurrentMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    //命中统计
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+    private final LongAdder rejectedRefreshes = new LongAdder();
+
+    public TwoLevelCache(String name, Cache<String, CacheEntry> localCache, RedisTemplate redisTemplate,
+                         StringRedisTemplate stringRedisTemplate, Duration redisTtl, Duration versionTtl,
+                         Executor refreshExecutor, TwoLevelCacheManager cacheManager) {
+        super(true);
+        this.name = name;
+        this.localCache = localCache;
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisTtl = redisTtl;
+        this.versionTtl = versionTtl;
+        this.refreshExecutor = refreshExecutor;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        CacheEntry entry = lookupEntry(String.valueOf(key));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String cacheKey = String.valueOf(key);
+
+        CacheEntry entry = lookupEntry(cacheKey);
+        if (entry != null) {
+            if (shouldRefreshEarly(entry)) {
+                refreshAsync(cacheKey, valueLoader);
+            }
+            return (T) fromStoreValue(entry.getValue());
+        }
+
+        misses.increment();
+        return (T) fromStoreValue(load(cacheKey, valueLoader));
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        putEntry(String.valueOf(key), getVersion(), toStoreValue(value), 0, invalidations.get());
+    }
+
+    @Override
+    public void evict(Object key) {
+        String cacheKey = String.valueOf(key);
+
+        redisTemplate.delete(getRedisKey(getVersion(), cacheKey));
+        invalidations.incrementAndGet();
+        localCache.invalidate(cacheKey);
+        cacheManager.publishInvalidation(name, cacheKey);
+    }
+
+    /**
+     * 清空缓存：递增版本号，不再扫描Redis中的key
+     */
+    @Override
+    public void clear() {
+        Long version = stringRedisTemplate.opsForValue().increment(getVersionKey());
+        invalidations.incrementAndGet();
+        localVersion = version == null ? null : new LocalVersion(String.valueOf(version), versionTtl);
+        localCache.invalidateAll();
+        cacheManager.publishInvalidation(name, null);
+    }
+
+    /**
+     * 收到其它节点的失效消息时，只清理本地缓存
+     * @param key 为null时清空整个本地缓存，同时丢弃本地版本号
+     */
+    void invalidateLocal(String key) {
+        invalidations.incrementAndGet();
+        if (key == null) {
+            localVersion = null;
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 缓存命中统计
+     * @return
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("localHits", localHits.sum());
+        statistics.put("redisHits", redisHits.sum());
+        statistics.put("misses", misses.sum());
+        statistics.put("loads", loads.sum());
+        statistics.put("earlyRefreshes", earlyRefreshes.sum());
+        statistics.put("rejectedRefreshes", rejectedRefreshes.sum());
+        statistics.put("localSize", localCache.estimatedSize());
+        return statistics;
+    }
+
+    /**
+     * 依次查询本地缓存和Redis
+     * @param cacheKey
+     * @return
+     */
+    private CacheEntry lookupEntry(String cacheKey) {
+        CacheEntry entry = localCache.getIfPresent(cacheKey);
+        if (entry != null) {
+            localHits.increment();
+            return entry;
+        }
+
+        long generation = invalidations.get();
+        entry = getRedisEntry(getVersion(), cacheKey);
+        if (entry != null) {
+            redisHits.increment();
+            putLocal(cacheKey, entry, generation);
+        }
+        return entry;
+    }
+
+    /**
+     * 加载数据，同一个key在本节点同一时间只有一个线程加载，其它线程等待其结果
+     * @param cacheKey
+     * @param valueLoader
+     * @return 缓存值（已转换为存储格式）
+     */
+    private Object load(String cacheKey, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(cacheKey, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException ex) {
+                throw new ValueRetrievalException(cacheKey, valueLoader, ex.getCause());
+            }
+        }
+
+        try {
+            Object storeValue = loadWithLock(cacheKey, valueLoader);
+            future.complete(storeValue);
+            return storeValue;
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 通过Redis短锁保证同一时间只有一个节点加载，未抢到锁的节点等待Redis中出现新值
+     * @param cacheKey
+     * @param valueLoader
+     * @return
+     */
+    private Object loadWithLock(String cacheKey, Callable<?> valueLoader) {
+        //加载前记录版本号和失效次数，加载期间缓存被清空时，结果只会写入Redis中已废弃的旧版本，也不会写入本地缓存
+        long generation = invalidations.get();
+        String version = getVersion();
+        String lockKey = name + "::lock::" + cacheKey;
+        String token = UUID.randomUUID().toString();
+
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_TIMEOUT);
+        if (!Boolean.TRUE.equals(locked)) {
+            long deadline = System.currentTimeMillis() + LOCK_TIMEOUT.toMillis();
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(LOCK_WAIT_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                CacheEntry entry = getRedisEntry(version, cacheKey);
+                if (entry != null) {
+                    putLocal(cacheKey, entry, generation);
+                    return entry.getValue();
+                }
+            }
+            //等待超时，由当前节点自行加载
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            Object value;
+            try {
+                value = valueLoader.call();
+            } catch (Throwable ex) {
+                throw new ValueRetrievalException(cacheKey, valueLoader, ex);
+            }
+            loads.increment();
+
+            Object storeValue = toStoreValue(value);
+            putEntry(cacheKey, version, storeValue, System.currentTimeMillis() - start, generation);
+            return storeValue;
+        } finally {
+            if (Boolean.TRUE.equals(locked)) {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+        }
+    }
+
+    /**
+     * 后台提前刷新，已有线程在加载时不再重复刷新，刷新线程池已满时放弃本次刷新
+     * @param cacheKey
+     * @param valueLoader
+     */
+    private void refreshAsync(String cacheKey, Callable<?> valueLoader) {
+        if (loading.containsKey(cacheKey)) {
+            return;
+        }
+        try {
+            CompletableFuture.runAsync(() -> load(cacheKey, valueLoader), refreshExecutor)
+                    .exceptionally(ex -> {
+                        log.error("缓存{}提前刷新失败：{}", name, cacheKey, ex);
+                        return null;
+                    });
+            earlyRefreshes.increment();
+        } catch (RejectedExecutionException e) {
+            rejectedRefreshes.increment();
+        }
+    }
+
+    /**
+     * 按概率判断是否提前刷新：越接近过期、加载越慢，越可能刷新
+     * @param entry
+     * @return
+     */
+    private boolean shouldRefreshEarly(CacheEntry entry) {
+        long delta = Math.max(entry.getLoadMillis(), 1);
+        double gap = delta * EARLY_REFRESH_BETA * -Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= entry.getExpireAt();
+    }
+
+    private void putEntry(String cacheKey, String version, Object storeValue, long loadMillis, long generation) {
+        CacheEntry entry = new CacheEntry(storeValue, System.currentTimeMillis() + redisTtl.toMillis(), loadMillis);
+
+        redisTemplate.opsForValue().set(getRedisKey(version, cacheKey), entry, redisTtl);
+        putLocal(cacheKey, entry, generation);
+    }
+
+    /**
+     * 写入本地缓存，generation之后发生过失效时不写入
+     * @param cacheKey
+     * @param entry
+     * @param generation 开始读取或加载前的失效次数
+     */
+    private void putLocal(String cacheKey, CacheEntry entry, long generation) {
+        if (invalidations.get() != generation) {
+            return;
+        }
+        localCache.put(cacheKey, entry);
+        //检查和写入之间发生了失效，撤销刚写入的值
+        if (invalidations.get() != generation) {
+            localCache.invalidate(cacheKey);
+        }
+    }
+
+    private CacheEntry getRedisEntry(String version, String cacheKey) {
+        Object value = redisTemplate.opsForValue().get(getRedisKey(version, cacheKey));
+        //忽略旧格式的数据
+        return value instanceof CacheEntry ? (CacheEntry) value : null;
+    }
+
+    /**
+     * 读取当前版本号，优先使用本地版本号，不存在时为0
+     * @return
+     */
+    private String getVersion() {
+        LocalVersion current = localVersion;
+        if (current != null && !current.isExpired()) {
+            return current.getValue();
+        }
+
+        long generation = invalidations.get();
+        String version = stringRedisTemplate.opsForValue().get(getVersionKey());
+        version = version == null ? "0" : version;
+        //读取期间收到清空消息时，读到的可能是旧版本号，不保存到本地
+        if (invalidations.get() == generation) {
+            localVersion = new LocalVersion(version, versionTtl);
+        }
+        return version;
+    }
+
+    private String getVersionKey() {
+        return name + "::version";
+    }
+
+    private String getRedisKey(String version, String key) {
+        return name + "::v" + version + "::" + key;
+    }
+
+    private static class LocalVersion {
+        private final String value;
+        private final long expireAt;
+
+        LocalVersion(String value, Duration ttl) {
+            this.value = value;
+            this.expireAt = System.currentTimeMillis() + ttl.toMillis();
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expireAt;
+        }
+    }
+}
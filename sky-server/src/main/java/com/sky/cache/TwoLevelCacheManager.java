@@ -0,0 +1,132 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.TwoLevelCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 二级缓存管理器，同时负责收发各节点之间的缓存失效消息
+ * 各缓存的提前刷新共用一个有界线程池，不占用公共ForkJoinPool
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener, DisposableBean {
+
+    //当前节点标识，用于忽略自己发出的失效消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+
+    private final RedisTemplate redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TwoLevelCacheProperties properties;
+    private final ThreadPoolExecutor refreshExecutor;
+
+    public TwoLevelCacheManager(RedisTemplate redisTemplate, StringRedisTemplate stringRedisTemplate,
+                                TwoLevelCacheProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = properties;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        //队列满时拒绝，由缓存放弃本次提前刷新，旧值仍然有效
+        this.refreshExecutor = new ThreadPoolExecutor(properties.getRefreshThreads(), properties.getRefreshThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(properties.getRefreshQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return cacheMap.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    /**
+     * 各缓存的命中统计
+     * @return
+     */
+    public Map<String, Map<String, Long>> getStatistics() {
+        Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+        cacheMap.forEach((name, cache) -> statistics.put(name, cache.getStatistics()));
+        return statistics;
+    }
+
+    /**
+     * 向其它节点广播缓存失效消息
+     * @param cacheName
+     * @param key 为null时表示清空整个缓存
+     */
+    void publishInvalidation(String cacheName, String key) {
+        JSONObject message = new JSONObject();
+        message.put("nodeId", nodeId);
+        message.put("cacheName", cacheName);
+        message.put("key", key);
+        stringRedisTemplate.convertAndSend(properties.getInvalidationChannel(), message.toJSONString());
+    }
+
+    /**
+     * 收到缓存失效消息，清理本地缓存
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            return;
+        }
+
+        TwoLevelCache cache = cacheMap.get(body.getString("cacheName"));
+        if (cache != null) {
+            log.info("收到缓存失效消息：{}", body);
+            cache.invalidateLocal(body.getString("key"));
+        }
+    }
+
+    private TwoLevelCache createCache(String name) {
+        com.github.benmanes.caffeine.cache.Cache<String, CacheEntry> localCache = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaximumSize())
+                .expireAfterWrite(properties.getLocalExpireSeconds(), TimeUnit.SECONDS)
+                .build();
+        return new TwoLevelCache(name, localCache, redisTemplate, stringRedisTemplate,
+                Duration.ofSeconds(properties.getRedisExpireSeconds()),
+                Duration.ofSeconds(properties.getLocalExpireSeconds()), refreshExecutor, this);
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+}
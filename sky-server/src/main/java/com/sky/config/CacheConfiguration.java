@@ -0,0 +1,33 @@
+package com.sky.config;
+
+import com.sky.cache.TwoLevelCacheManager;
+import com.sky.properties.TwoLevelCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 缓存配置类，注册本地+Redis二级缓存管理器
+ */
+@Configuration
+@Slf4j
+public class CacheConfiguration {
+
+    /**
+     * 创建二级缓存管理器，并监听其它节点发出的缓存失效消息
+     */
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisTemplate redisTemplate, StringRedisTemplate stringRedisTemplate,
+                                             TwoLevelCacheProperties twoLevelCacheProperties,
+                                             RedisMessageListenerContainer redisMessageListenerContainer) {
+        log.info("开始创建二级缓存管理器");
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisTemplate, stringRedisTemplate, twoLevelCacheProperties);
+        redisMessageListenerContainer.addMessageListener(cacheManager,
+                new ChannelTopic(twoLevelCacheProperties.getInvalidationChannel()));
+        return cacheManager;
+    }
+}
@@ -0,0 +1,149 @@
+package com.sky.config;
+
+import com.sky.utils.OrderNumberGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成器配置类
+ * 自动分配的节点id通过Redis租约（SET NX + 过期时间）独占，后台定时续约
+ * 生成器只在租约有效期内生成订单号；租约被其它节点占用时改用新的节点id，应用关闭时保留租约直到借用的时间戳过去
+ */
+@Configuration
+@Slf4j
+public class OrderNumberConfiguration implements DisposableBean {
+
+    private static final String WORKER_ID_KEY = "order_number_worker_id";
+    //节点id租约，key为前缀加节点id，value为持有者标识
+    private static final String LEASE_KEY_PREFIX = "order_number_worker_lease::";
+    //租约有效期，每三分之一有效期续约一次
+    private static final Duration LEASE_TIMEOUT = Duration.ofSeconds(60);
+    //生成器提前停止生成的时间，容忍本机与Redis之间的时钟偏差和续约请求耗时
+    private static final Duration CLOCK_MARGIN = Duration.ofSeconds(5);
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    //当前节点标识，作为租约的value
+    private final String owner = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-number-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile StringRedisTemplate stringRedisTemplate;
+    private volatile String leaseKey;
+    private volatile OrderNumberGenerator generator;
+
+    /**
+     * 未配置 sky.order.worker-id 时，从Redis递增的位置开始依次尝试占用节点id，1024个节点id都被占用时启动失败
+     */
+    @Bean
+    public OrderNumberGenerator orderNumberGenerator(StringRedisTemplate stringRedisTemplate,
+                                                     @Value("${sky.order.worker-id:-1}") long workerId) {
+        if (workerId >= 0) {
+            log.info("创建订单号生成器，节点id：{}", workerId);
+            return new OrderNumberGenerator(workerId);
+        }
+
+        this.stringRedisTemplate = stringRedisTemplate;
+        long start = System.currentTimeMillis();
+        workerId = acquireWorkerId();
+        OrderNumberGenerator generator = new OrderNumberGenerator(workerId);
+        generator.setValidUntil(leaseValidUntil(start));
+        this.generator = generator;
+
+        long interval = LEASE_TIMEOUT.toMillis() / 3;
+        executor.scheduleWithFixedDelay(this::renewLease, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("创建订单号生成器，节点id：{}", workerId);
+        return generator;
+    }
+
+    private long acquireWorkerId() {
+        long size = OrderNumberGenerator.MAX_WORKER_ID + 1;
+        Long sequence = stringRedisTemplate.opsForValue().increment(WORKER_ID_KEY);
+        long start = sequence == null ? 0 : sequence;
+
+        for (long i = 0; i < size; i++) {
+            long candidate = (start + i) % size;
+            String key = LEASE_KEY_PREFIX + candidate;
+            Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(key, owner, LEASE_TIMEOUT);
+            if (Boolean.TRUE.equals(acquired)) {
+                this.leaseKey = key;
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("all " + size + " order number worker ids are leased by other nodes");
+    }
+
+    /**
+     * 续约成功后延长生成器的有效期；续约失败（如Redis不可用）时生成器在原有效期到达后自动停止生成
+     * 租约已过期时尝试重新占用同一个节点id，已被其它节点占用时立即停止生成并改用新的节点id
+     */
+    private void renewLease() {
+        long start = System.currentTimeMillis();
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(leaseKey),
+                    owner, String.valueOf(LEASE_TIMEOUT.toMillis()));
+            if (renewed != null && renewed > 0) {
+                generator.setValidUntil(leaseValidUntil(start));
+                return;
+            }
+
+            Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(leaseKey, owner, LEASE_TIMEOUT);
+            if (Boolean.TRUE.equals(acquired)) {
+                generator.setValidUntil(leaseValidUntil(start));
+                log.warn("订单号节点id租约{}已过期，重新占用成功", leaseKey);
+                return;
+            }
+
+            generator.setValidUntil(0);
+            log.error("订单号节点id租约{}已被其它节点占用，停止生成订单号并重新分配节点id", leaseKey);
+            long workerId = acquireWorkerId();
+            generator.reassign(workerId, leaseValidUntil(start));
+            log.warn("订单号生成器改用节点id：{}", workerId);
+        } catch (RuntimeException e) {
+            //定时任务抛出异常后不会再被调度，这里只记录日志，下次续约时重试
+            log.error("订单号节点id续约失败", e);
+        }
+    }
+
+    private static long leaseValidUntil(long renewStart) {
+        return renewStart + LEASE_TIMEOUT.toMillis() - CLOCK_MARGIN.toMillis();
+    }
+
+    /**
+     * 停止生成后不立即删除租约：序列号用尽时生成器会借用未来的时间戳，
+     * 租约保留到系统时钟超过最后借用的时间戳（另加一秒给仍在生成中的请求）后自动过期，避免下一个持有者生成相同的订单号
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        if (leaseKey == null) {
+            return;
+        }
+        generator.setValidUntil(0);
+        long borrowed = Math.max(generator.getLastTimestampMillis() - System.currentTimeMillis(), 0);
+        long ttl = borrowed + TimeUnit.SECONDS.toMillis(1);
+        try {
+            stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(leaseKey), owner, String.valueOf(ttl));
+        } catch (RuntimeException e) {
+            log.warn("缩短订单号节点id租约{}失败，等待自动过期", leaseKey, e);
+        }
+    }
+}
@@ -1,19 +1,43 @@
 package com.sky.config;
 
 
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sky.cache.Lz4RedisSerializer;
+import com.sky.properties.RedisSerializerProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.NullValue;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Slf4j
 @Configuration
 public class RedisConfiguration {
 
+    //反序列化时只允许还原项目自身和JDK常用值类型，避免缓存数据被篡改时实例化任意类
+    private static final PolymorphicTypeValidator TYPE_VALIDATOR = BasicPolymorphicTypeValidator.builder()
+            .allowIfSubType("com.sky.")
+            .allowIfSubType("java.util.")
+            .allowIfSubType("java.time.")
+            .allowIfSubType("java.math.")
+            .allowIfSubType(NullValue.class)
+            .build();
+
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                       RedisSerializerProperties redisSerializerProperties) {
         log.info("开始创建redisTemplate");
 
         RedisTemplate redisTemplate = new RedisTemplate();
@@ -21,8 +45,71 @@ public class RedisConfiguration {
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        //设置redis value的序列化器，缓存管理器同样通过redisTemplate读写
+        RedisSerializer<Object> valueSerializer = createValueSerializer(redisSerializerProperties);
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         return redisTemplate;
     }
 
+    /**
+     * Redis消息监听容器，各频道共用一个连接，监听者由各自的所属组件注册
+     * @param redisConnectionFactory
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
+    /**
+     * 根据配置创建value的序列化器
+     * @param properties
+     * @return
+     */
+    static RedisSerializer<Object> createValueSerializer(RedisSerializerProperties properties) {
+        log.info("redis value序列化格式：{}，压缩阈值：{}", properties.getFormat(), properties.getCompressThreshold());
+
+        RedisSerializer<Object> serializer;
+        switch (properties.getFormat()) {
+            case "jdk":
+                serializer = new JdkSerializationRedisSerializer();
+                break;
+            case "json":
+                serializer = createJacksonSerializer(new ObjectMapper());
+                break;
+            case "smile":
+                serializer = createJacksonSerializer(new ObjectMapper(new SmileFactory()));
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的redis序列化格式：" + properties.getFormat());
+        }
+
+        if (properties.getCompressThreshold() > 0) {
+            serializer = new Lz4RedisSerializer(serializer, properties.getCompressThreshold());
+        } else if (!"jdk".equals(properties.getFormat())) {
+            //不压缩时同样带上格式标记，用于识别切换格式前以JDK序列化写入的数据
+            serializer = new Lz4RedisSerializer(serializer, Integer.MAX_VALUE);
+        }
+        return serializer;
+    }
+
+    /**
+     * 创建带类型信息的jackson序列化器，反序列化时可以还原出原始的VO类型
+     * @param objectMapper
+     * @return
+     */
+    private static RedisSerializer<Object> createJacksonSerializer(ObjectMapper objectMapper) {
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.activateDefaultTyping(TYPE_VALIDATOR,
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        //支持缓存空值
+        GenericJackson2JsonRedisSerializer.registerNullValueSerializer(objectMapper, null);
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
 
 }
@@ -0,0 +1,36 @@
+package com.sky.controller.admin;
+
+import com.sky.cache.TwoLevelCacheManager;
+import com.sky.result.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 缓存监控
+ */
+@RestController
+@RequestMapping("/admin/cache")
+@Api(tags = "缓存相关接口")
+@Slf4j
+public class CacheController {
+
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
+
+    /**
+     * 查询各缓存的命中统计
+     * @return
+     */
+    @GetMapping("/statistics")
+    @ApiOperation("查询缓存命中统计")
+    public Result<Map<String, Map<String, Long>>> statistics(){
+        return Result.success(cacheManager.getStatistics());
+    }
+}
@@ -0,0 +1,36 @@
+package com.sky.controller.admin;
+
+import com.sky.datasource.DataSourceMetrics;
+import com.sky.result.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 读写分离监控
+ */
+@RestController
+@RequestMapping("/admin/datasource")
+@Api(tags = "数据源相关接口")
+@Slf4j
+public class DataSourceController {
+
+    @Autowired
+    private DataSourceMetrics dataSourceMetrics;
+
+    /**
+     * 查询本节点主库、从库的路由耗时及从库复制延迟
+     * @return
+     */
+    @GetMapping("/statistics")
+    @ApiOperation("查询读写分离统计")
+    public Result<Map<String, Map<String, Long>>> statistics(){
+        return Result.success(dataSourceMetrics.snapshot());
+    }
+}
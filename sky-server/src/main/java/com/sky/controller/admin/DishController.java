@@ -11,12 +11,12 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.annotations.Delete;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.web.bind.annotation.*;
 
 import javax.websocket.server.PathParam;
 import java.util.List;
-import java.util.Set;
 
 /**
  * 菜品管理
@@ -31,7 +31,7 @@ public class DishController {
     private DishService dishService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private CacheManager cacheManager;
 
     /**
      * 新增菜品
@@ -46,8 +46,7 @@ public class DishController {
         dishService.saveWithFlavor(dishDTO);
 
         //清理缓存数据
-        String key = "dish_" + dishDTO.getCategoryId();
-        cleancache(key);
+        cleancache(dishDTO.getCategoryId());
 
         return Result.success();
     }
@@ -75,7 +74,7 @@ public class DishController {
         dishService.deleteBatch(ids);
 
         //将所有菜品缓存删除
-        cleancache("dish_*");
+        cleancache(null);
 
         return Result.success();
     }
@@ -96,7 +95,7 @@ public class DishController {
         dishService.updateWithFlavor(dishDTO);
 
         //将所有菜品缓存删除
-        cleancache("dish_*");
+        cleancache(null);
 
         return Result.success();
     }
@@ -107,7 +106,7 @@ public class DishController {
         dishService.startOrStop(status, id);
 
         //将所有菜品缓存删除
-        cleancache("dish_*");
+        cleancache(null);
 
         return Result.success();
     }
@@ -121,11 +120,15 @@ public class DishController {
 
     /**
      * 清理缓存数据
-     * @param pattern
+     * @param categoryId 为null时清理所有菜品缓存
      */
-    private void cleancache(String pattern){
-        log.info("clean redis cache");
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
+    private void cleancache(Long categoryId){
+        log.info("clean dish cache: {}", categoryId);
+        Cache cache = cacheManager.getCache("dishCache");
+        if(categoryId == null){
+            cache.clear();
+        }else {
+            cache.evict(categoryId);
+        }
     }
 }
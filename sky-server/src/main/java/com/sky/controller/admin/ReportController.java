@@ -62,8 +62,16 @@ public class ReportController {
     }
     @ApiOperation("导出运营数据表")
     @GetMapping("/export")
-    public void export(HttpServletResponse response){
-        reportService.exportBussinessData(response);
+    public void export(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                       @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                       HttpServletResponse response){
+        //未指定时间范围时默认导出最近30天
+        if(begin == null || end == null){
+            begin = LocalDate.now().minusDays(30);
+            end = LocalDate.now().minusDays(1);
+        }
+        log.info("导出运营数据表：{}--{}", begin, end);
+        reportService.exportBussinessData(begin, end, response);
     }
 
 }
@@ -0,0 +1,36 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.task.TaskMetrics;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 定时任务监控
+ */
+@RestController
+@RequestMapping("/admin/task")
+@Api(tags = "定时任务相关接口")
+@Slf4j
+public class TaskController {
+
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    /**
+     * 查询各分布式定时任务的执行统计
+     * @return
+     */
+    @GetMapping("/statistics")
+    @ApiOperation("查询定时任务执行统计")
+    public Result<Map<String, Map<String, String>>> statistics(){
+        return Result.success(taskMetrics.getStatistics());
+    }
+}
@@ -0,0 +1,36 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.websocket.WebSocketServer;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * WebSocket连接监控
+ */
+@RestController
+@RequestMapping("/admin/websocket")
+@Api(tags = "WebSocket相关接口")
+@Slf4j
+public class WebSocketController {
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    /**
+     * 查询本节点的连接数、队列深度及发送耗时
+     * @return
+     */
+    @GetMapping("/statistics")
+    @ApiOperation("查询WebSocket连接统计")
+    public Result<Map<String, Long>> statistics(){
+        return Result.success(webSocketServer.getStatistics());
+    }
+}
@@ -6,6 +6,7 @@ import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.WorkspaceVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
@@ -73,4 +74,17 @@ public class WorkSpaceController {
     public Result<SetmealOverViewVO> setmealOverView(){
         return Result.success(workspaceService.getSetmealOverView());
     }
+
+    /**
+     * 工作台全部数据查询，一次返回今日数据、订单、菜品和套餐总览
+     * @return
+     */
+    @GetMapping("/all")
+    @ApiOperation("工作台全部数据查询")
+    public Result<WorkspaceVO> all(){
+        LocalDateTime begin = LocalDateTime.now().with(LocalTime.MIN);
+        LocalDateTime end = LocalDateTime.now().with(LocalTime.MAX);
+
+        return Result.success(workspaceService.getAll(begin, end));
+    }
 }
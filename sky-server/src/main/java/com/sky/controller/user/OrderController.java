@@ -25,6 +25,17 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    /**
+     * 获取下单令牌，提交订单时携带，防止重复下单
+     *
+     * @return
+     */
+    @GetMapping("/submitToken")
+    @ApiOperation("获取下单令牌")
+    public Result<String> submitToken() {
+        return Result.success(orderService.getSubmitToken());
+    }
+
     @PostMapping("/submit")
     @ApiOperation("用户下单")
     public Result<OrderSubmitVO> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO) {
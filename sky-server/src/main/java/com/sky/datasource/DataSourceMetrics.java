@@ -0,0 +1,104 @@
+package com.sky.datasource;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读写分离统计
+ * 按路由（主库、从库）统计标注方法的调用次数和耗时，按数据源统计健康检查耗时和从库复制延迟
+ */
+@Component
+public class DataSourceMetrics {
+
+    public static final String ROUTE_MASTER = "master";
+    public static final String ROUTE_REPLICA = "replica";
+
+    private static final long UNKNOWN_LAG = -1;
+
+    private final Map<String, Stats> routeStats = new ConcurrentHashMap<>();
+    private final Map<String, Stats> checkStats = new ConcurrentHashMap<>();
+    private final Map<String, Long> lagSeconds = new ConcurrentHashMap<>();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * 记录一次标注方法的执行结果及耗时
+     * @param route
+     * @param millis
+     * @param success
+     */
+    public void recordQuery(String route, long millis, boolean success) {
+        routeStats.computeIfAbsent(route, key -> new Stats()).record(millis, success);
+    }
+
+    /**
+     * 从库延迟过大，只读查询改为读主库
+     */
+    public void recordFallback() {
+        fallbacks.increment();
+    }
+
+    /**
+     * 记录一次数据源健康检查结果
+     * @param dataSourceName
+     * @param millis
+     * @param lag 从库复制延迟，单位秒，主库或未知时为null
+     * @param success
+     */
+    public void recordCheck(String dataSourceName, long millis, Long lag, boolean success) {
+        checkStats.computeIfAbsent(dataSourceName, key -> new Stats()).record(millis, success);
+        lagSeconds.put(dataSourceName, lag == null ? UNKNOWN_LAG : lag);
+    }
+
+    /**
+     * 统计结果
+     * @return route:路由名或datasource:数据源名 -> 统计项
+     */
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+        routeStats.forEach((route, stats) -> {
+            Map<String, Long> values = stats.snapshot("queries");
+            if (ROUTE_MASTER.equals(route)) {
+                values.put("fallbacks", fallbacks.sum());
+            }
+            statistics.put("route:" + route, values);
+        });
+        checkStats.forEach((dataSourceName, stats) -> {
+            Map<String, Long> values = stats.snapshot("checks");
+            values.put("lagSeconds", lagSeconds.getOrDefault(dataSourceName, UNKNOWN_LAG));
+            statistics.put("datasource:" + dataSourceName, values);
+        });
+        return statistics;
+    }
+
+    private static class Stats {
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        void record(long millis, boolean success) {
+            if (success) {
+                succeeded.increment();
+            } else {
+                failed.increment();
+            }
+            totalMillis.add(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+        }
+
+        Map<String, Long> snapshot(String countName) {
+            long count = succeeded.sum() + failed.sum();
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put(countName, count);
+            values.put("failed", failed.sum());
+            values.put("avgMillis", count == 0 ? 0 : totalMillis.sum() / count);
+            values.put("maxMillis", maxMillis.get());
+            return values;
+        }
+    }
+}
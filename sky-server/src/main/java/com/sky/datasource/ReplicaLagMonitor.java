@@ -0,0 +1,132 @@
+package com.sky.datasource;
+
+import com.sky.properties.ReplicaProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.shardingjdbc.jdbc.adapter.AbstractDataSourceAdapter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从库延迟检查
+ * 定时检查每个数据源的连通性和耗时，从库读取复制延迟；任一从库延迟超过阈值或无法访问时，
+ * 只读查询改为读主库，恢复后自动切回从库。各节点独立检查，只影响本节点的路由
+ */
+@Component
+@Slf4j
+public class ReplicaLagMonitor implements DisposableBean {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-lag-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, DataSource> dataSourceMap;
+    private final String masterDataSourceName;
+    private final long maxLagSeconds;
+    private final DataSourceMetrics dataSourceMetrics;
+
+    private volatile boolean replicaAvailable = true;
+
+    public ReplicaLagMonitor(DataSource dataSource, ReplicaProperties properties, DataSourceMetrics dataSourceMetrics,
+                             @Value("${spring.shardingsphere.masterslave.master-data-source-name:master}") String masterDataSourceName) {
+        //只有ShardingSphere读写分离数据源才能取到各个实际数据源
+        this.dataSourceMap = dataSource instanceof AbstractDataSourceAdapter
+                ? ((AbstractDataSourceAdapter) dataSource).getDataSourceMap()
+                : Collections.emptyMap();
+        this.masterDataSourceName = masterDataSourceName;
+        this.maxLagSeconds = properties.getMaxLagSeconds();
+        this.dataSourceMetrics = dataSourceMetrics;
+
+        if (dataSourceMap.isEmpty()) {
+            log.info("未配置读写分离数据源，不检查从库延迟");
+            return;
+        }
+        long interval = properties.getCheckIntervalSeconds();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            } catch (RuntimeException e) {
+                //定时任务抛出异常后不会再被调度，这里只记录日志
+                log.error("从库延迟检查失败", e);
+            }
+        }, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 从库是否可以读取
+     * @return
+     */
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    private void check() {
+        boolean available = true;
+        for (Map.Entry<String, DataSource> entry : dataSourceMap.entrySet()) {
+            String name = entry.getKey();
+            boolean master = name.equals(masterDataSourceName);
+
+            long start = System.currentTimeMillis();
+            Long lag = null;
+            boolean success = false;
+            try (Connection connection = entry.getValue().getConnection();
+                 Statement statement = connection.createStatement()) {
+                if (master) {
+                    statement.execute("select 1");
+                } else {
+                    lag = getLagSeconds(statement);
+                }
+                success = true;
+            } catch (SQLException e) {
+                log.warn("数据源{}检查失败：{}", name, e.getMessage());
+            }
+            dataSourceMetrics.recordCheck(name, System.currentTimeMillis() - start, lag, success);
+
+            //负载均衡可能访问任意一个从库，只要有一个从库不可读就全部改为读主库
+            if (!master && (lag == null || lag > maxLagSeconds)) {
+                available = false;
+            }
+        }
+
+        if (available != replicaAvailable) {
+            if (available) {
+                log.info("从库已恢复，只读查询切回从库");
+            } else {
+                log.warn("从库不可用或复制延迟超过{}秒，只读查询改为读主库", maxLagSeconds);
+            }
+        }
+        replicaAvailable = available;
+    }
+
+    /**
+     * 读取从库的复制延迟，复制已中断时返回null
+     */
+    private Long getLagSeconds(Statement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("show slave status")) {
+            //未配置复制时没有结果，视为没有延迟
+            if (!resultSet.next()) {
+                return 0L;
+            }
+            long lag = resultSet.getLong("Seconds_Behind_Master");
+            return resultSet.wasNull() ? null : lag;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
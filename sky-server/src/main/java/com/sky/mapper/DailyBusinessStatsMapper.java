@@ -0,0 +1,32 @@
+package com.sky.mapper;
+
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.entity.DailyBusinessStats;
+import org.apache.ibatis.annotations.Mapper;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface DailyBusinessStatsMapper {
+
+    /**
+     * 在指定日期的汇总数据上累加，不存在则插入
+     * @param dailyBusinessStats 各字段为增量
+     */
+    void increment(DailyBusinessStats dailyBusinessStats);
+
+    /**
+     * 批量覆盖写入汇总数据
+     * @param statsList
+     */
+    void upsertBatch(List<DailyBusinessStats> statsList);
+
+    /**
+     * 查询指定日期范围（包含两端）的汇总数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatisticsDTO> listByDate(LocalDate begin, LocalDate end);
+}
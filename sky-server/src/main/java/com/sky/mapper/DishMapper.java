@@ -5,6 +5,7 @@ import com.sky.annotation.AutoFill;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
 import com.sky.enumeration.OperationType;
+import com.sky.vo.DishOverViewVO;
 import com.sky.vo.DishVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
@@ -63,4 +64,18 @@ public interface DishMapper {
      */
     Integer countByMap(Map map);
 
+    /**
+     * 一次扫描统计起售和停售的菜品数量
+     * @return
+     */
+    DishOverViewVO countByStatusBuckets();
+
+    /**
+     * 根据套餐id查询套餐包含的菜品
+     * @param setmealId
+     * @return
+     */
+    @Select("select d.* from dish d left join setmeal_dish sd on d.id = sd.dish_id where sd.setmeal_id = #{setmealId}")
+    List<Dish> getBySetmealId(Long setmealId);
+
 }
@@ -2,7 +2,10 @@ package com.sky.mapper;
 
 
 import com.github.pagehelper.Page;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderStatusBucketDTO;
+import com.sky.dto.OrderStatusCountDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.Mapper;
@@ -31,8 +34,19 @@ public interface OrderMapper {
 
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
-    @Select("select count(0) from orders where status = #{status};")
-    Integer countStatus(Integer status);
+    /**
+     * 游标分页查询，按下单时间、id倒序，返回游标之后的pageSize条数据
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    List<Orders> pageQueryByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 统计分页查询条件下的订单数
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    Long countByQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
     /**
      * 根据id查询订单信息
@@ -47,6 +61,26 @@ public interface OrderMapper {
     @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
     List<Orders> getByStatusAndOrderTime(Integer status, LocalDateTime orderTime);
 
+    /**
+     * 查询指定状态下单时间早于orderTime的订单id
+     * @param status
+     * @param orderTime
+     * @param limit
+     * @return
+     */
+    @Select("select id from orders where status = #{status} and order_time < #{orderTime} limit #{limit}")
+    List<Long> getIdsByStatusAndOrderTime(Integer status, LocalDateTime orderTime, int limit);
+
+    /**
+     * 批量修改订单状态，只修改当前处于fromStatus的订单，重复执行或多个节点同时执行不会重复修改
+     * @param ids
+     * @param fromStatus
+     * @param toStatus
+     * @param fields 需要同时修改的字段，可以为null
+     * @return 实际修改的订单数
+     */
+    int transition(List<Long> ids, Integer fromStatus, Integer toStatus, Orders fields);
+
     /**
      * 营业额查询
      * @param map
@@ -61,6 +95,14 @@ public interface OrderMapper {
      */
     Integer countByMap(Map map);
 
+    /**
+     * 一次扫描统计指定时间内各状态的订单数、订单总数和营业额，与countByMap、sumByMap一样不包含两端
+     * @param begin 下单时间起点（不含），可以为null
+     * @param end 下单时间终点（不含），可以为null
+     * @return
+     */
+    OrderStatusBucketDTO countByStatusBuckets(LocalDateTime begin, LocalDateTime end);
+
     /**
      * 统计指定时间内的销量排名前十
      * @param begin
@@ -68,4 +110,30 @@ public interface OrderMapper {
      * @return
      */
     List<GoodsSalesDTO> getSalesTop(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按天分组统计指定时间内的订单数、有效订单数和营业额
+     * @param begin
+     * @param end
+     * @param status 有效订单状态
+     * @return
+     */
+    List<DailyStatisticsDTO> getDailyStatistics(LocalDateTime begin, LocalDateTime end, Integer status);
+
+    /**
+     * 按状态分组统计订单数
+     * @param begin 下单时间起点，可以为null
+     * @param end 下单时间终点，可以为null
+     * @param statuses 只统计这些状态，可以为null
+     * @return
+     */
+    List<OrderStatusCountDTO> countGroupByStatus(LocalDateTime begin, LocalDateTime end, List<Integer> statuses);
+
+    /**
+     * 查询指定id中处于某一状态的订单，只返回id、状态和下单时间
+     * @param status
+     * @param ids
+     * @return
+     */
+    List<Orders> getByStatusAndIds(Integer status, List<Long> ids);
 }
@@ -6,6 +6,7 @@ import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Setmeal;
 import com.sky.enumeration.OperationType;
 import com.sky.vo.DishItemVO;
+import com.sky.vo.SetmealOverViewVO;
 import com.sky.vo.SetmealVO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
@@ -62,4 +63,10 @@ public interface SetmealMapper {
      */
     Integer countByMap(Map map);
 
+    /**
+     * 一次扫描统计起售和停售的套餐数量
+     * @return
+     */
+    SetmealOverViewVO countByStatusBuckets();
+
 }
@@ -0,0 +1,33 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+@Mapper
+public interface TaskFenceMapper {
+
+    /**
+     * 任务第一次写入时插入token为0的记录，已存在时忽略
+     * @param name
+     */
+    @Insert("insert ignore into task_fence(name, token) values (#{name}, 0)")
+    void insertIfAbsent(String name);
+
+    /**
+     * 查询任务已写入的最大token并加行锁，持有到事务结束，同一任务的写入事务依次执行
+     * @param name
+     * @return
+     */
+    @Select("select token from task_fence where name = #{name} for update")
+    Long getTokenForUpdate(String name);
+
+    /**
+     * 推进任务的token
+     * @param name
+     * @param token
+     */
+    @Update("update task_fence set token = #{token} where name = #{name}")
+    void updateToken(String name, Long token);
+}
@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -19,4 +22,12 @@ public interface UserMapper {
     User getById(Long userId);
 
     Integer sumByMap(Map map);
+
+    /**
+     * 按天分组统计指定时间内的新增用户数
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatisticsDTO> countNewUsersByDate(LocalDateTime begin, LocalDateTime end);
 }
@@ -0,0 +1,33 @@
+package com.sky.service;
+
+import com.sky.dto.DailyStatisticsDTO;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public interface DailyBusinessStatsService {
+
+    /**
+     * 订单完成，下单日期已结束时累加该日期的有效订单数和营业额
+     * @param orderTime
+     * @param amount
+     */
+    void recordOrderCompleted(LocalDateTime orderTime, BigDecimal amount);
+
+    /**
+     * 根据订单表和用户表重新计算指定日期范围的汇总数据
+     * @param begin
+     * @param end
+     */
+    void reconcile(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询指定日期范围的每日营业数据，已结束的日期读取汇总表，当天读取原始表
+     * @param begin
+     * @param end
+     * @return
+     */
+    Map<LocalDate, DailyStatisticsDTO> getDailyStatistics(LocalDate begin, LocalDate end);
+}
@@ -1,13 +1,22 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.entity.Orders;
 import com.sky.result.PageResult;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 
+import java.util.List;
+
 public interface OrderService {
+    /**
+     * 获取下单令牌
+     * @return
+     */
+    String getSubmitToken();
+
     OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO);
 
     /**
@@ -97,4 +106,14 @@ public interface OrderService {
      * @param id
      */
     void reminder(Long id);
+
+    /**
+     * 批量修改订单状态
+     * @param ids
+     * @param fromStatus 只修改当前处于该状态的订单
+     * @param toStatus
+     * @param fields 需要同时修改的字段，可以为null
+     * @return 实际修改的订单数
+     */
+    int transition(List<Long> ids, Integer fromStatus, Integer toStatus, Orders fields);
 }
@@ -0,0 +1,55 @@
+package com.sky.service;
+
+import com.sky.entity.Orders;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface OrderStatusCountService {
+
+    /**
+     * 用户下单，累加当天待付款订单数
+     * @param orderTime
+     */
+    void recordSubmitted(LocalDateTime orderTime);
+
+    /**
+     * 订单状态变更，原状态计数减一，新状态计数加一
+     * @param ordersDB 变更前的订单，需要包含状态和下单时间
+     * @param toStatus
+     */
+    void recordTransition(Orders ordersDB, Integer toStatus);
+
+    /**
+     * 批量订单状态变更
+     * @param ordersList 变更前的订单，需要包含状态和下单时间
+     * @param toStatus
+     */
+    void recordTransition(List<Orders> ordersList, Integer toStatus);
+
+    /**
+     * 查询指定日期下单的各状态订单数
+     * @param date
+     * @return 订单状态 -> 订单数
+     */
+    Map<Integer, Integer> countByDate(LocalDate date);
+
+    /**
+     * 查询未结束（待付款、待接单、已接单、派送中）的各状态订单数，不限下单日期
+     * @return 订单状态 -> 订单数
+     */
+    Map<Integer, Integer> countInProgress();
+
+    /**
+     * 根据订单表重新计算指定日期的计数
+     * @param date
+     */
+    void reconcile(LocalDate date);
+
+    /**
+     * 根据订单表重新计算未结束订单的计数
+     */
+    void reconcileInProgress();
+}
@@ -0,0 +1,31 @@
+package com.sky.service;
+
+import java.time.LocalDateTime;
+
+public interface OrderTimeoutService {
+
+    /**
+     * 登记待付款订单的超时时间
+     * @param orderId
+     * @param orderTime
+     */
+    void schedule(Long orderId, LocalDateTime orderTime);
+
+    /**
+     * 订单已支付或已取消，移除超时登记
+     * @param orderId
+     */
+    void remove(Long orderId);
+
+    /**
+     * 批量取消已到期的待付款订单
+     * @return 取消的订单数
+     */
+    int processExpired();
+
+    /**
+     * 兜底扫描数据库中已超时但未登记的待付款订单
+     * @return 取消的订单数
+     */
+    int reconcile();
+}
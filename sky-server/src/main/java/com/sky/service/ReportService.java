@@ -40,7 +40,9 @@ public interface ReportService {
 
     /**
      * 导出运营数据报表
+     * @param begin
+     * @param end
      * @param response
      */
-    void exportBussinessData(HttpServletResponse response);
+    void exportBussinessData(LocalDate begin, LocalDate end, HttpServletResponse response);
 }
@@ -14,4 +14,37 @@ public interface ShoppingCartService {
     void clean();
 
     void sub(ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 查询指定用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> listByUserId(Long userId);
+
+    /**
+     * 清空指定用户的购物车
+     * @param userId
+     */
+    void cleanByUserId(Long userId);
+
+    /**
+     * 取出并清空指定用户的购物车，读取和清空是一次原子操作
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> drainByUserId(Long userId);
+
+    /**
+     * 批量加入购物车
+     * @param userId
+     * @param shoppingCartList
+     */
+    void addBatch(Long userId, List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 将有变更的购物车写回数据库
+     * @return 写回的用户数
+     */
+    int flushToDatabase();
 }
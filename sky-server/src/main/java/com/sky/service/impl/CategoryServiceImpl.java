@@ -2,9 +2,11 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.annotation.ReadOnly;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
+import com.sky.converter.CategoryConverter;
 import com.sky.dto.CategoryDTO;
 import com.sky.dto.CategoryPageQueryDTO;
 import com.sky.entity.Category;
@@ -15,7 +17,6 @@ import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
 import com.sky.service.CategoryService;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
@@ -40,9 +41,8 @@ public class CategoryServiceImpl implements CategoryService {
      * @param categoryDTO
      */
     public void save(CategoryDTO categoryDTO) {
-        Category category = new Category();
         //属性拷贝
-        BeanUtils.copyProperties(categoryDTO, category);
+        Category category = CategoryConverter.INSTANCE.toCategory(categoryDTO);
 
         //分类状态默认为禁用状态0
         category.setStatus(StatusConstant.DISABLE);
@@ -96,8 +96,7 @@ public class CategoryServiceImpl implements CategoryService {
      * @param categoryDTO
      */
     public void update(CategoryDTO categoryDTO) {
-        Category category = new Category();
-        BeanUtils.copyProperties(categoryDTO,category);
+        Category category = CategoryConverter.INSTANCE.toCategory(categoryDTO);
 
 //        //设置修改时间、修改人
 //        category.setUpdateTime(LocalDateTime.now());
@@ -126,6 +125,7 @@ public class CategoryServiceImpl implements CategoryService {
      * @param type
      * @return
      */
+    @ReadOnly
     public List<Category> list(Integer type) {
         return categoryMapper.list(type);
     }
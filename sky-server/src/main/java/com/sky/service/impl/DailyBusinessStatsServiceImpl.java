@@ -0,0 +1,143 @@
+package com.sky.service.impl;
+
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.DailyBusinessStatsService;
+import com.sky.task.TaskFence;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@Slf4j
+public class DailyBusinessStatsServiceImpl implements DailyBusinessStatsService {
+
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private TaskFence taskFence;
+
+    /**
+     * 订单完成，下单日期已结束时累加该日期的有效订单数和营业额
+     * 当天的数据查询时直接读取原始表，汇总行在当天结束后由定时校正写入，不在每次完成订单时更新同一行，避免行锁竞争
+     * @param orderTime
+     * @param amount
+     */
+    @Override
+    public void recordOrderCompleted(LocalDateTime orderTime, BigDecimal amount) {
+        LocalDate date = orderTime.toLocalDate();
+        if (!date.isBefore(LocalDate.now())) {
+            return;
+        }
+        increment(date, amount == null ? BigDecimal.ZERO : amount, 0, 1, 0);
+    }
+
+    /**
+     * 根据订单表和用户表重新计算指定日期范围的汇总数据
+     * @param begin
+     * @param end
+     */
+    @Override
+    @Transactional
+    public void reconcile(LocalDate begin, LocalDate end) {
+        //由定时任务执行时先校验fencing token，租约已被其它节点接手时不覆盖汇总数据
+        taskFence.check();
+
+        Map<LocalDate, DailyStatisticsDTO> rawMap = getRawStatistics(begin, end);
+
+        List<DailyBusinessStats> statsList = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyStatisticsDTO raw = rawMap.getOrDefault(date, new DailyStatisticsDTO());
+            statsList.add(DailyBusinessStats.builder()
+                    .statDate(date)
+                    .turnover(raw.getTurnover() == null ? BigDecimal.ZERO : BigDecimal.valueOf(raw.getTurnover()))
+                    .totalOrderCount(raw.getOrderCount() == null ? 0 : raw.getOrderCount())
+                    .validOrderCount(raw.getValidOrderCount() == null ? 0 : raw.getValidOrderCount())
+                    .newUsers(raw.getNewUsers() == null ? 0 : raw.getNewUsers())
+                    .updateTime(now)
+                    .build());
+        }
+        dailyBusinessStatsMapper.upsertBatch(statsList);
+        log.info("营业数据汇总校正完成：{}--{}", begin, end);
+    }
+
+    /**
+     * 查询指定日期范围的每日营业数据，已结束的日期读取汇总表，当天读取原始表
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public Map<LocalDate, DailyStatisticsDTO> getDailyStatistics(LocalDate begin, LocalDate end) {
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, DailyStatisticsDTO> statisticsMap = new HashMap<>();
+
+        //已结束的日期读取汇总表
+        if (begin.isBefore(today)) {
+            LocalDate closedEnd = end.isBefore(today) ? end : today.minusDays(1);
+            for (DailyStatisticsDTO statistics : dailyBusinessStatsMapper.listByDate(begin, closedEnd)) {
+                statisticsMap.put(statistics.getDate(), statistics);
+            }
+        }
+
+        //当天的数据仍在变化，读取原始表
+        if (!end.isBefore(today)) {
+            LocalDate rawBegin = begin.isAfter(today) ? begin : today;
+            statisticsMap.putAll(getRawStatistics(rawBegin, end));
+        }
+        return statisticsMap;
+    }
+
+    /**
+     * 从订单表和用户表按天分组统计营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    private Map<LocalDate, DailyStatisticsDTO> getRawStatistics(LocalDate begin, LocalDate end) {
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
+
+        Map<LocalDate, DailyStatisticsDTO> statisticsMap = new HashMap<>();
+        for (DailyStatisticsDTO statistics : orderMapper.getDailyStatistics(beginTime, endTime, Orders.COMPLETED)) {
+            statisticsMap.put(statistics.getDate(), statistics);
+        }
+        for (DailyStatisticsDTO users : userMapper.countNewUsersByDate(beginTime, endTime)) {
+            DailyStatisticsDTO statistics = statisticsMap.computeIfAbsent(users.getDate(),
+                    date -> DailyStatisticsDTO.builder().date(date).build());
+            statistics.setNewUsers(users.getNewUsers());
+        }
+        return statisticsMap;
+    }
+
+    private void increment(LocalDate date, BigDecimal turnover, int totalOrderCount, int validOrderCount, int newUsers) {
+        DailyBusinessStats stats = DailyBusinessStats.builder()
+                .statDate(date)
+                .turnover(turnover)
+                .totalOrderCount(totalOrderCount)
+                .validOrderCount(validOrderCount)
+                .newUsers(newUsers)
+                .updateTime(LocalDateTime.now())
+                .build();
+        dailyBusinessStatsMapper.increment(stats);
+    }
+}
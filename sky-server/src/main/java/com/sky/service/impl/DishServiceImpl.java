@@ -2,8 +2,11 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.annotation.ReadOnly;
+import com.sky.cache.PriceIndex;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
+import com.sky.converter.DishConverter;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -18,13 +21,15 @@ import com.sky.result.PageResult;
 import com.sky.service.DishService;
 import com.sky.vo.DishVO;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -38,6 +43,8 @@ public class DishServiceImpl implements DishService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private PriceIndex priceIndex;
 
     /**
      * 新增菜品和对应的口味
@@ -47,8 +54,7 @@ public class DishServiceImpl implements DishService {
     @Override
     public void saveWithFlavor(DishDTO dishDTO) {
 
-        Dish dish = new Dish();
-        BeanUtils.copyProperties(dishDTO, dish);
+        Dish dish = DishConverter.INSTANCE.toDish(dishDTO);
 
         //像菜品表插入数据
         dishMapper.insert(dish);
@@ -65,6 +71,7 @@ public class DishServiceImpl implements DishService {
             //批量插入
             dishFlavorMapper.insertBatch(flavors);
         }
+        priceIndex.refreshDishes(Collections.singletonList(dishId));
 
     }
 
@@ -99,6 +106,7 @@ public class DishServiceImpl implements DishService {
 //        }
         dishMapper.deleteByIds(ids);
         dishFlavorMapper.deleteByDishIds(ids);
+        priceIndex.refreshDishes(ids);
 
 
     }
@@ -112,8 +120,7 @@ public class DishServiceImpl implements DishService {
         //根据dish_id查口味
         List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
 
-        DishVO dishVO = new DishVO();
-        BeanUtils.copyProperties(dish, dishVO);
+        DishVO dishVO = DishConverter.INSTANCE.toDishVO(dish);
         dishVO.setFlavors(dishFlavors);
 
         return dishVO;
@@ -122,8 +129,7 @@ public class DishServiceImpl implements DishService {
     @Override
     public void updateWithFlavor(DishDTO dishDTO) {
         //修改菜品表基本信息
-        Dish dish = new Dish();
-        BeanUtils.copyProperties(dishDTO, dish);
+        Dish dish = DishConverter.INSTANCE.toDish(dishDTO);
 
         dishMapper.update(dish);
 
@@ -138,6 +144,7 @@ public class DishServiceImpl implements DishService {
         }
 
         dishFlavorMapper.insertBatch(flavors);
+        priceIndex.refreshDishes(Collections.singletonList(dishDTO.getId()));
     }
 
     /**
@@ -145,19 +152,24 @@ public class DishServiceImpl implements DishService {
      * @param dish
      * @return
      */
+    @ReadOnly
     public List<DishVO> listWithFlavor(Dish dish) {
         List<Dish> dishList = dishMapper.list(dish);
 
         List<DishVO> dishVOList = new ArrayList<>();
+        if(dishList == null || dishList.size() == 0){
+            return dishVOList;
+        }
 
-        for (Dish d : dishList) {
-            DishVO dishVO = new DishVO();
-            BeanUtils.copyProperties(d,dishVO);
+        //一次查询所有菜品的口味，再按菜品id分组
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
 
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
+        for (Dish d : dishList) {
+            DishVO dishVO = DishConverter.INSTANCE.toDishVO(d);
 
-            dishVO.setFlavors(flavors);
+            dishVO.setFlavors(flavorMap.getOrDefault(d.getId(), new ArrayList<>()));
             dishVOList.add(dishVO);
         }
 
@@ -190,8 +202,10 @@ public class DishServiceImpl implements DishService {
 
                     setmealMapper.update(setmeal);
                 }
+                priceIndex.refreshSetmeals(setmealIds);
             }
         }
+        priceIndex.refreshDishes(Collections.singletonList(id));
 
     }
 
@@ -204,8 +218,7 @@ public class DishServiceImpl implements DishService {
         List<Dish> list = dishMapper.list(dish);
         List<DishVO> dishVOList = new ArrayList<>();
         for (Dish dish1 : list) {
-            DishVO dishVO = new DishVO();
-            BeanUtils.copyProperties(dish1,dishVO);
+            DishVO dishVO = DishConverter.INSTANCE.toDishVO(dish1);
             dishVOList.add(dishVO);
         }
         return dishVOList;
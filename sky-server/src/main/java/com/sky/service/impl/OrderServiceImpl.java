@@ -4,8 +4,12 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.annotation.MasterOnly;
+import com.sky.cache.PriceIndex;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
+import com.sky.converter.OrderConverter;
 import com.sky.dto.*;
 import com.sky.entity.*;
 import com.sky.exception.AddressBookBusinessException;
@@ -13,29 +17,65 @@ import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
 import com.sky.result.PageResult;
+import com.sky.service.DailyBusinessStatsService;
 import com.sky.service.OrderService;
+import com.sky.service.OrderStatusCountService;
+import com.sky.service.OrderTimeoutService;
+import com.sky.service.ShoppingCartService;
+import com.sky.task.TaskFence;
+import com.sky.utils.OrderNumberGenerator;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
+import com.sky.websocket.WebSocketNotifier;
 import com.sky.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class OrderServiceImpl implements OrderService {
+    //批量修改订单状态时每条update语句包含的订单数
+    private static final int TRANSITION_BATCH_SIZE = 500;
+    //游标分页未指定每页条数时的默认值
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    //下单令牌，值为 new（未使用）、processing（下单中）或下单结果的JSON
+    private static final String ORDER_SUBMIT_TOKEN_KEY = "order_submit_token::";
+    private static final String SUBMIT_TOKEN_NEW = "new";
+    private static final String SUBMIT_TOKEN_PROCESSING = "processing";
+    private static final long SUBMIT_TOKEN_TTL_MINUTES = 30;
+    //不带令牌下单时的用户锁
+    private static final String ORDER_SUBMIT_LOCK_KEY = "order_submit_lock::";
+    private static final long SUBMIT_LOCK_SECONDS = 10;
+
+    //令牌未使用时标记为下单中，返回原来的值，令牌不存在时返回null
+    private static final RedisScript<String> CLAIM_SUBMIT_TOKEN_SCRIPT = new DefaultRedisScript<>(
+            "local value = redis.call('get', KEYS[1]) " +
+                    "if value == ARGV[1] then " +
+                    "redis.call('set', KEYS[1], ARGV[2], 'px', redis.call('pttl', KEYS[1])) " +
+                    "end return value", String.class);
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
@@ -43,23 +83,55 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartService shoppingCartService;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
     private UserMapper userMapper;
 
     @Autowired
-    private WebSocketServer webSocketServer;
+    private WebSocketNotifier webSocketNotifier;
+    @Autowired
+    private DailyBusinessStatsService dailyBusinessStatsService;
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
+    @Autowired
+    private OrderStatusCountService orderStatusCountService;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private PriceIndex priceIndex;
+    @Autowired
+    private TaskFence taskFence;
+
+    //配送费
+    @Value("${sky.order.delivery-fee:6}")
+    private BigDecimal deliveryFee;
 
 
 
+    /**
+     * 获取下单令牌，同一令牌只能成功下单一次
+     * @return
+     */
+    @Override
+    public String getSubmitToken() {
+        String token = UUID.randomUUID().toString();
+        stringRedisTemplate.opsForValue().set(getSubmitTokenKey(BaseContext.getCurrentId(), token),
+                SUBMIT_TOKEN_NEW, SUBMIT_TOKEN_TTL_MINUTES, TimeUnit.MINUTES);
+        return token;
+    }
+
     /**
      * 用户下单
+     * 校验、取出购物车和计算金额都在事务外完成，事务内只插入订单和订单明细
      * @param ordersSubmitDTO
      * @return
      */
-    @Transactional
     @Override
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
         //处理业务异常（地址簿为空，购物车为空）
@@ -67,52 +139,189 @@ public class OrderServiceImpl implements OrderService {
         if(addressBook == null){
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
-        // 购物车为空
+
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart cart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(cart);
+        String token = ordersSubmitDTO.getToken();
+        //带令牌的请求按令牌去重，重复提交直接返回第一次的结果；不带令牌时同一用户同一时间只能有一个下单请求
+        String lockKey;
+        if (token != null) {
+            lockKey = getSubmitTokenKey(userId, token);
+            String previous = stringRedisTemplate.execute(CLAIM_SUBMIT_TOKEN_SCRIPT,
+                    Collections.singletonList(lockKey), SUBMIT_TOKEN_NEW, SUBMIT_TOKEN_PROCESSING);
+            if (previous == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_TOKEN_INVALID);
+            }
+            if (SUBMIT_TOKEN_PROCESSING.equals(previous)) {
+                throw new OrderBusinessException(MessageConstant.ORDER_SUBMITTING);
+            }
+            if (!SUBMIT_TOKEN_NEW.equals(previous)) {
+                return JSON.parseObject(previous, OrderSubmitVO.class);
+            }
+        } else {
+            lockKey = ORDER_SUBMIT_LOCK_KEY + userId;
+            Boolean locked = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, SUBMIT_TOKEN_PROCESSING, SUBMIT_LOCK_SECONDS, TimeUnit.SECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                throw new OrderBusinessException(MessageConstant.ORDER_SUBMITTING);
+            }
+        }
+
+        OrderSubmitVO orderSubmitVO;
+        try {
+            orderSubmitVO = doSubmitOrder(ordersSubmitDTO, addressBook, userId);
+        } catch (RuntimeException e) {
+            //订单未提交，令牌可以再次使用
+            if (token != null) {
+                stringRedisTemplate.opsForValue().set(lockKey, SUBMIT_TOKEN_NEW, SUBMIT_TOKEN_TTL_MINUTES, TimeUnit.MINUTES);
+            } else {
+                stringRedisTemplate.delete(lockKey);
+            }
+            throw e;
+        }
+
+        //事务已提交，先保存下单结果，之后的步骤失败也不会让令牌重新可用而重复下单
+        if (token != null) {
+            stringRedisTemplate.opsForValue().set(lockKey, JSON.toJSONString(orderSubmitVO),
+                    SUBMIT_TOKEN_TTL_MINUTES, TimeUnit.MINUTES);
+        } else {
+            stringRedisTemplate.delete(lockKey);
+        }
+
+        afterOrderSubmitted(orderSubmitVO);
+        return orderSubmitVO;
+    }
+
+    /**
+     * 下单成功后更新状态计数并登记超时取消，失败只记录日志，由各自的定时对账任务修正
+     * 当天的营业数据直接读取订单表，不在下单时累加汇总表
+     * @param orderSubmitVO
+     */
+    private void afterOrderSubmitted(OrderSubmitVO orderSubmitVO) {
+        try {
+            orderStatusCountService.recordSubmitted(orderSubmitVO.getOrderTime());
+        } catch (RuntimeException e) {
+            log.error("订单{}的状态计数记录失败，等待对账修正", orderSubmitVO.getId(), e);
+        }
+        try {
+            orderTimeoutService.schedule(orderSubmitVO.getId(), orderSubmitVO.getOrderTime());
+        } catch (RuntimeException e) {
+            log.error("订单{}的超时取消登记失败，等待对账修正", orderSubmitVO.getId(), e);
+        }
+    }
+
+    /**
+     * 取出购物车生成订单，校验或插入失败时把商品放回购物车
+     * @param ordersSubmitDTO
+     * @param addressBook
+     * @param userId
+     * @return
+     */
+    private OrderSubmitVO doSubmitOrder(OrdersSubmitDTO ordersSubmitDTO, AddressBook addressBook, Long userId) {
+        // 购物车为空
+        List<ShoppingCart> shoppingCartList = shoppingCartService.drainByUserId(userId);
         if(shoppingCartList == null || shoppingCartList.size() == 0){
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
 
-        //向订单表插入一条数据
+        Orders orders;
+        try {
+            //按当前价格和起售状态校验购物车，商品金额以服务端为准
+            applyCurrentPrice(shoppingCartList);
+            orders = insertOrder(ordersSubmitDTO, addressBook, userId, shoppingCartList);
+        } catch (RuntimeException e) {
+            //下单失败，商品放回购物车
+            shoppingCartService.addBatch(userId, shoppingCartList);
+            throw e;
+        }
+
+        //封装VO
+        return OrderSubmitVO.builder()
+                .id(orders.getId())
+                .orderTime(orders.getOrderTime())
+                .orderNumber(orders.getNumber())
+                .orderAmount(orders.getAmount())
+                .build();
+    }
+
+    /**
+     * 按价格索引校验购物车，停售或已删除的商品不能下单，商品金额替换为当前价格
+     * @param shoppingCartList
+     */
+    private void applyCurrentPrice(List<ShoppingCart> shoppingCartList) {
+        for (ShoppingCart shoppingCart : shoppingCartList) {
+            PriceIndex.Item item = shoppingCart.getDishId() != null
+                    ? priceIndex.getDish(shoppingCart.getDishId())
+                    : priceIndex.getSetmeal(shoppingCart.getSetmealId());
+            if (item == null || !StatusConstant.ENABLE.equals(item.getStatus())) {
+                throw new OrderBusinessException(MessageConstant.ORDER_ITEM_NOT_ON_SALE + shoppingCart.getName());
+            }
+            shoppingCart.setAmount(item.getPrice());
+        }
+    }
+
+    /**
+     * 生成订单和订单明细，事务内只执行插入
+     * @param ordersSubmitDTO
+     * @param addressBook
+     * @param userId
+     * @param shoppingCartList
+     * @return
+     */
+    private Orders insertOrder(OrdersSubmitDTO ordersSubmitDTO, AddressBook addressBook, Long userId,
+                               List<ShoppingCart> shoppingCartList) {
         Orders orders = new Orders();
-        BeanUtils.copyProperties(ordersSubmitDTO, orders);
+        orders.setAddressBookId(ordersSubmitDTO.getAddressBookId());
+        orders.setPayMethod(ordersSubmitDTO.getPayMethod());
+        orders.setRemark(ordersSubmitDTO.getRemark());
+        orders.setEstimatedDeliveryTime(ordersSubmitDTO.getEstimatedDeliveryTime());
+        orders.setDeliveryStatus(ordersSubmitDTO.getDeliveryStatus());
+        orders.setTablewareNumber(ordersSubmitDTO.getTablewareNumber());
+        orders.setTablewareStatus(ordersSubmitDTO.getTablewareStatus());
+        int packAmount = ordersSubmitDTO.getPackAmount() == null ? 0 : ordersSubmitDTO.getPackAmount();
+        orders.setPackAmount(packAmount);
+        orders.setAmount(calculateAmount(shoppingCartList, packAmount));
+        if (ordersSubmitDTO.getAmount() != null && ordersSubmitDTO.getAmount().compareTo(orders.getAmount()) != 0) {
+            log.warn("下单金额与服务端计算结果不一致，客户端：{}，服务端：{}", ordersSubmitDTO.getAmount(), orders.getAmount());
+        }
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
         orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));
+        orders.setNumber(orderNumberGenerator.nextNumber());
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setUserId(userId);
         orders.setAddress(addressBook.toString());
 
-        orderMapper.insert(orders);
-
-        //向订单明细表插入多条数据
-        List<OrderDetail> orderDetailList = new ArrayList<OrderDetail>();
+        List<OrderDetail> orderDetailList = new ArrayList<>(shoppingCartList.size());
         for (ShoppingCart shoppingCart : shoppingCartList) {
-            OrderDetail orderDetail = new OrderDetail();
-            BeanUtils.copyProperties(shoppingCart, orderDetail);
-            orderDetail.setOrderId(orders.getId());
-
-            orderDetailList.add(orderDetail);
+            orderDetailList.add(OrderConverter.INSTANCE.toOrderDetail(shoppingCart));
         }
-        orderDetailMapper.insertBatch(orderDetailList);
 
-        //删除购物车
-        shoppingCartMapper.deleteByUserId(userId);
-        //封装VO
-        OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
-                .id(orders.getId())
-                .orderTime(orders.getOrderTime())
-                .orderNumber(orders.getNumber())
-                .orderAmount(orders.getAmount())
-                .build();
+        //向订单表插入一条数据，向订单明细表插入多条数据
+        transactionTemplate.executeWithoutResult(status -> {
+            orderMapper.insert(orders);
+            orderDetailList.forEach(orderDetail -> orderDetail.setOrderId(orders.getId()));
+            orderDetailMapper.insertBatch(orderDetailList);
+        });
+        return orders;
+    }
 
-        return orderSubmitVO;
+    /**
+     * 计算订单金额：商品金额 + 打包费 + 配送费
+     * @param shoppingCartList
+     * @param packAmount
+     * @return
+     */
+    private BigDecimal calculateAmount(List<ShoppingCart> shoppingCartList, int packAmount) {
+        BigDecimal amount = BigDecimal.valueOf(packAmount).add(deliveryFee);
+        for (ShoppingCart shoppingCart : shoppingCartList) {
+            amount = amount.add(shoppingCart.getAmount().multiply(BigDecimal.valueOf(shoppingCart.getNumber())));
+        }
+        return amount;
+    }
+
+    private String getSubmitTokenKey(Long userId, String token) {
+        return ORDER_SUBMIT_TOKEN_KEY + userId + "::" + token;
     }
 
     /**
@@ -152,6 +361,7 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param outTradeNo
      */
+    @MasterOnly
     public void paySuccess(String outTradeNo) {
 
         // 根据订单号查询订单
@@ -166,6 +376,8 @@ public class OrderServiceImpl implements OrderService {
                 .build();
 
         orderMapper.update(orders);
+        orderTimeoutService.remove(ordersDB.getId());
+        orderStatusCountService.recordTransition(ordersDB, Orders.TO_BE_CONFIRMED);
 
         //通过websocket向客户端推送消息 type orderId content
         Map map = new HashMap<>();
@@ -174,7 +386,7 @@ public class OrderServiceImpl implements OrderService {
         map.put("content", "订单号"+outTradeNo);
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        webSocketNotifier.notifyRole(WebSocketServer.ROLE_ADMIN, json);
 
     }
 
@@ -185,13 +397,7 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public PageResult pageQuery(OrdersPageQueryDTO ordersPageQueryDTO) {
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
-
-        Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
-        List<OrderVO> orderVOList = getOrderVoList(page);
-
-        return new PageResult(page.getTotal(), orderVOList);
-
+        return queryOrders(ordersPageQueryDTO);
     }
 
     /**
@@ -200,9 +406,11 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderStatisticsVO getStatistics() {
-        Integer confirmed = orderMapper.countStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.countStatus(Orders.DELIVERY_IN_PROGRESS);
-        Integer toBeConfirmed = orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
+        //各状态订单数由Redis计数一次读取，不再逐个状态查询数据库
+        Map<Integer, Integer> counts = orderStatusCountService.countInProgress();
+        Integer confirmed = counts.get(Orders.CONFIRMED);
+        Integer deliveryInProgress = counts.get(Orders.DELIVERY_IN_PROGRESS);
+        Integer toBeConfirmed = counts.get(Orders.TO_BE_CONFIRMED);
 
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
         orderStatisticsVO.setConfirmed(confirmed);
@@ -216,38 +424,36 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      * @return
      */
+    @MasterOnly
     @Override
     public OrderVO getDetailsById(Long id) {
         Orders orders = orderMapper.getById(id);
-        OrderVO orderVO = new OrderVO();
-        BeanUtils.copyProperties(orders, orderVO);
-
-        String orderDishes = getOrderDishes(orders);
-        orderVO.setOrderDishes(orderDishes);
-
         List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
-        orderVO.setOrderDetailList(orderDetailList);
-
-        return orderVO;
+        return buildOrderVO(orders, orderDetailList);
     }
 
     /**
      * 接单
      * @param ordersConfirmDTO
      */
+    @MasterOnly
     @Override
     public void confrim(OrdersConfirmDTO ordersConfirmDTO) {
+        Orders ordersDB = orderMapper.getById(ordersConfirmDTO.getId());
+
         Orders orders = Orders.builder()
                 .status(Orders.CONFIRMED)
                 .id(ordersConfirmDTO.getId())
                 .build();
         orderMapper.update(orders);
+        orderStatusCountService.recordTransition(ordersDB, Orders.CONFIRMED);
     }
 
     /**
      * 拒单
      * @param ordersRejectionDTO
      */
+    @MasterOnly
     @Transactional
     @Override
     public void reject(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
@@ -276,12 +482,14 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.CANCELLED)
                 .build();
         orderMapper.update(orders);
+        orderStatusCountService.recordTransition(ordersDB, Orders.CANCELLED);
     }
 
     /**
      * 取消订单
      * @param ordersCancelDTO
      */
+    @MasterOnly
     @Transactional
     @Override
     public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
@@ -308,12 +516,14 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.CANCELLED)
                 .build();
         orderMapper.update(orders);
+        orderStatusCountService.recordTransition(ordersDB, Orders.CANCELLED);
     }
 
     /**
      * 派送订单
      * @param id
      */
+    @MasterOnly
     @Override
     public void delivery(Long id) {
         Orders ordersDB = orderMapper.getById(id);
@@ -326,8 +536,10 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.DELIVERY_IN_PROGRESS)
                 .build();
         orderMapper.update(orders);
+        orderStatusCountService.recordTransition(ordersDB, Orders.DELIVERY_IN_PROGRESS);
     }
 
+    @MasterOnly
     @Override
     public void complete(Long id) {
         Orders ordersDB = orderMapper.getById(id);
@@ -340,6 +552,8 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.COMPLETED)
                 .build();
         orderMapper.update(orders);
+        orderStatusCountService.recordTransition(ordersDB, Orders.COMPLETED);
+        dailyBusinessStatsService.recordOrderCompleted(ordersDB.getOrderTime(), ordersDB.getAmount());
     }
 
     /**
@@ -349,22 +563,23 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public PageResult getHistoryOrders(OrdersPageQueryDTO ordersPageQueryDTO) {
-        Long userId = BaseContext.getCurrentId();
-        Orders orders = Orders.builder()
-                .userId(userId)
-                .status(ordersPageQueryDTO.getStatus())
-                .build();
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
-        Page<Orders> page= orderMapper.list(orders);
-
-        List<OrderVO> orderVoList = getOrderVoList(page);
-        return new PageResult(page.getTotal(), orderVoList);
+        //历史订单只按用户和状态筛选
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setUserId(BaseContext.getCurrentId());
+        query.setStatus(ordersPageQueryDTO.getStatus());
+        query.setPage(ordersPageQueryDTO.getPage());
+        query.setPageSize(ordersPageQueryDTO.getPageSize());
+        query.setLastOrderTime(ordersPageQueryDTO.getLastOrderTime());
+        query.setLastId(ordersPageQueryDTO.getLastId());
+        query.setCount(ordersPageQueryDTO.getCount());
+        return queryOrders(query);
     }
 
     /**
      * 根据id取消订单
      * @param id
      */
+    @MasterOnly
     @Override
     public void cancelById(Long id) {
         // 根据id查询订单
@@ -401,6 +616,8 @@ public class OrderServiceImpl implements OrderService {
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
         orderMapper.update(orders);
+        orderTimeoutService.remove(ordersDB.getId());
+        orderStatusCountService.recordTransition(ordersDB, Orders.CANCELLED);
     }
 
     /**
@@ -417,24 +634,23 @@ public class OrderServiceImpl implements OrderService {
 
         // 将订单详情对象转换为购物车对象
         List<ShoppingCart> shoppingCartList = orderDetailList.stream().map(x -> {
-            ShoppingCart shoppingCart = new ShoppingCart();
-
             // 将原订单详情里面的菜品信息重新复制到购物车对象中
-            BeanUtils.copyProperties(x, shoppingCart, "id");
+            ShoppingCart shoppingCart = OrderConverter.INSTANCE.toShoppingCart(x);
             shoppingCart.setUserId(userId);
             shoppingCart.setCreateTime(LocalDateTime.now());
 
             return shoppingCart;
         }).collect(Collectors.toList());
 
-        // 将购物车对象批量添加到数据库
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        // 将购物车对象批量添加到购物车
+        shoppingCartService.addBatch(userId, shoppingCartList);
     }
 
     /**
      * 客户催单
      * @param id
      */
+    @MasterOnly
     @Override
     public void reminder(Long id) {
         // 根据id查询订单
@@ -453,41 +669,106 @@ public class OrderServiceImpl implements OrderService {
         map.put("content", "订单号"+ordersDB.getNumber());
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        webSocketNotifier.notifyRole(WebSocketServer.ROLE_ADMIN, json);
 
     }
 
-    private List<OrderVO> getOrderVoList(Page<Orders> page) {
-        List<Orders> ordersList = page.getResult();
+    /**
+     * 批量修改订单状态，按批执行，每批一条update语句
+     * 由分布式任务调用时先校验fencing token，租约已被其它节点接手时整体回滚
+     * @param ids
+     * @param fromStatus 只修改当前处于该状态的订单
+     * @param toStatus
+     * @param fields 需要同时修改的字段，可以为null
+     * @return 实际修改的订单数
+     */
+    @Override
+    @Transactional
+    public int transition(List<Long> ids, Integer fromStatus, Integer toStatus, Orders fields) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+
+        taskFence.check();
+
+        int rows = 0;
+        for (int i = 0; i < ids.size(); i += TRANSITION_BATCH_SIZE) {
+            List<Long> batch = ids.subList(i, Math.min(i + TRANSITION_BATCH_SIZE, ids.size()));
+            rows += orderMapper.transition(batch, fromStatus, toStatus, fields);
+        }
+        return rows;
+    }
+
+    /**
+     * 分页查询订单
+     * page为0或传入游标时使用游标分页，按 (order_time, id) 定位，翻页开销与页码无关；否则使用PageHelper分页
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    private PageResult queryOrders(OrdersPageQueryDTO ordersPageQueryDTO) {
+        //游标的下单时间和id只传了一个时，无法定位上一页的位置，不能当作第一页返回
+        if ((ordersPageQueryDTO.getLastId() == null) != (ordersPageQueryDTO.getLastOrderTime() == null)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_CURSOR_INCOMPLETE);
+        }
+
+        Boolean count = ordersPageQueryDTO.getCount();
+        if (ordersPageQueryDTO.getPage() <= 0 || ordersPageQueryDTO.getLastId() != null) {
+            if (ordersPageQueryDTO.getPageSize() <= 0) {
+                ordersPageQueryDTO.setPageSize(DEFAULT_PAGE_SIZE);
+            }
+            List<Orders> ordersList = orderMapper.pageQueryByCursor(ordersPageQueryDTO);
+            long total = Boolean.FALSE.equals(count) ? -1 : orderMapper.countByQuery(ordersPageQueryDTO);
+            return new PageResult(total, getOrderVoList(ordersList));
+        }
+
+        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize(), !Boolean.FALSE.equals(count));
+        Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
+        long total = Boolean.FALSE.equals(count) ? -1 : page.getTotal();
+        return new PageResult(total, getOrderVoList(page.getResult()));
+    }
+
+    /**
+     * 将分页结果转换为订单VO，订单明细一次批量查出后按订单id分组
+     * @param ordersList
+     * @return
+     */
+    private List<OrderVO> getOrderVoList(List<Orders> ordersList) {
         List<OrderVO> orderVOList = new ArrayList<>();
         if(ordersList == null || ordersList.size() == 0){
             return orderVOList;
         }
-        for (Orders order : ordersList) {
-            OrderVO orderVO = new OrderVO();
-            BeanUtils.copyProperties(order, orderVO);
 
-            String orderDishes = getOrderDishes(order);
-            orderVO.setOrderDishes(orderDishes);
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        Map<Long, List<OrderDetail>> detailMap = orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
 
-            List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(order.getId());
-            orderVO.setOrderDetailList(orderDetailList);
-
-            orderVOList.add(orderVO);
+        for (Orders order : ordersList) {
+            List<OrderDetail> orderDetailList = detailMap.getOrDefault(order.getId(), new ArrayList<>());
+            orderVOList.add(buildOrderVO(order, orderDetailList));
         }
         return orderVOList;
     }
 
     /**
-     * 根据id获取菜品信息字符串
+     * 根据订单和订单明细组装订单VO
      * @param order
+     * @param orderDetailList
      * @return
      */
-    private String getOrderDishes(Orders order) {
-
-        List<OrderDetail> list = orderDetailMapper.getByOrderId(order.getId());
+    private OrderVO buildOrderVO(Orders order, List<OrderDetail> orderDetailList) {
+        OrderVO orderVO = OrderConverter.INSTANCE.toOrderVO(order);
+        orderVO.setOrderDishes(getOrderDishes(orderDetailList));
+        orderVO.setOrderDetailList(orderDetailList);
+        return orderVO;
+    }
 
-        List<String> stringList = list.stream().map(od -> {
+    /**
+     * 根据订单明细获取菜品信息字符串
+     * @param orderDetailList
+     * @return
+     */
+    private String getOrderDishes(List<OrderDetail> orderDetailList) {
+        List<String> stringList = orderDetailList.stream().map(od -> {
             return od.getName() + "*" + od.getNumber() + ";";
         }).collect(Collectors.toList());
 
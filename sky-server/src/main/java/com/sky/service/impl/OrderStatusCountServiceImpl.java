@@ -0,0 +1,283 @@
+package com.sky.service.impl;
+
+import com.sky.dto.OrderStatusBucketDTO;
+import com.sky.dto.OrderStatusCountDTO;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.OrderStatusCountService;
+import com.sky.task.TaskFence;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 订单状态计数
+ * 按下单日期和订单状态在Redis中维护订单数，订单状态变更时原子地增减，工作台一次MGET读取；
+ * 计数不存在时从数据库初始化，并由定时任务定期校正，修正事务回滚、并发修改等原因产生的偏差
+ */
+@Service
+@Slf4j
+public class OrderStatusCountServiceImpl implements OrderStatusCountService {
+
+    private static final String ORDER_STATUS_COUNT_KEY = "order_status_count::";
+    private static final String IN_PROGRESS = "in_progress";
+    private static final long COUNT_TTL_DAYS = 2;
+
+    private static final List<Integer> ALL_STATUSES = Arrays.asList(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED,
+            Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, Orders.CANCELLED);
+    //未结束的订单数量较少，不限日期统计也只需扫描状态索引中的一小段
+    private static final List<Integer> IN_PROGRESS_STATUSES = Arrays.asList(Orders.PENDING_PAYMENT,
+            Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS);
+
+    //只修改已存在的计数，不存在的计数等待从数据库初始化，避免从0开始累加出错误的值
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #KEYS do " +
+                    "if redis.call('exists', KEYS[i]) == 1 then redis.call('incrby', KEYS[i], ARGV[i]) end " +
+                    "end " +
+                    "return #KEYS", Long.class);
+
+    //覆盖写入计数；ARGV[2]不为空时最后一个key为任务锁，锁的值不是当前token（租约已被其它节点接手）时不写入
+    private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+            "local n = #KEYS " +
+                    "if ARGV[2] ~= '' then " +
+                    "if redis.call('get', KEYS[n]) ~= ARGV[2] then return 0 end " +
+                    "n = n - 1 " +
+                    "end " +
+                    "for i = 1, n do redis.call('set', KEYS[i], ARGV[i + 2], 'ex', ARGV[1]) end " +
+                    "return 1", Long.class);
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private TaskFence taskFence;
+
+    /**
+     * 用户下单，累加当天待付款订单数
+     * @param orderTime
+     */
+    @Override
+    public void recordSubmitted(LocalDateTime orderTime) {
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        addDelta(deltas, orderTime.toLocalDate(), Orders.PENDING_PAYMENT, 1);
+        increment(deltas);
+    }
+
+    /**
+     * 订单状态变更，原状态计数减一，新状态计数加一
+     * @param ordersDB 变更前的订单，需要包含状态和下单时间
+     * @param toStatus
+     */
+    @Override
+    public void recordTransition(Orders ordersDB, Integer toStatus) {
+        recordTransition(Collections.singletonList(ordersDB), toStatus);
+    }
+
+    /**
+     * 批量订单状态变更
+     * @param ordersList 变更前的订单，需要包含状态和下单时间
+     * @param toStatus
+     */
+    @Override
+    public void recordTransition(List<Orders> ordersList, Integer toStatus) {
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        for (Orders orders : ordersList) {
+            if (toStatus.equals(orders.getStatus())) {
+                continue;
+            }
+            LocalDate date = orders.getOrderTime().toLocalDate();
+            addDelta(deltas, date, orders.getStatus(), -1);
+            addDelta(deltas, date, toStatus, 1);
+        }
+        increment(deltas);
+    }
+
+    /**
+     * 查询指定日期下单的各状态订单数
+     * @param date
+     * @return 订单状态 -> 订单数
+     */
+    @Override
+    public Map<Integer, Integer> countByDate(LocalDate date) {
+        List<String> keys = ALL_STATUSES.stream().map(status -> dateKey(date, status)).collect(Collectors.toList());
+        Map<Integer, Integer> counts = getCounts(ALL_STATUSES, keys);
+        if (counts == null) {
+            counts = loadByDate(date);
+            save(ALL_STATUSES, keys, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * 查询未结束（待付款、待接单、已接单、派送中）的各状态订单数，不限下单日期
+     * @return 订单状态 -> 订单数
+     */
+    @Override
+    public Map<Integer, Integer> countInProgress() {
+        List<String> keys = IN_PROGRESS_STATUSES.stream().map(this::inProgressKey).collect(Collectors.toList());
+        Map<Integer, Integer> counts = getCounts(IN_PROGRESS_STATUSES, keys);
+        if (counts == null) {
+            counts = loadInProgress();
+            save(IN_PROGRESS_STATUSES, keys, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * 根据订单表重新计算指定日期的计数
+     * @param date
+     */
+    @Override
+    public void reconcile(LocalDate date) {
+        List<String> keys = ALL_STATUSES.stream().map(status -> dateKey(date, status)).collect(Collectors.toList());
+        save(ALL_STATUSES, keys, loadByDate(date));
+    }
+
+    /**
+     * 根据订单表重新计算未结束订单的计数
+     */
+    @Override
+    public void reconcileInProgress() {
+        List<String> keys = IN_PROGRESS_STATUSES.stream().map(this::inProgressKey).collect(Collectors.toList());
+        save(IN_PROGRESS_STATUSES, keys, loadInProgress());
+    }
+
+    private Map<Integer, Integer> loadByDate(LocalDate date) {
+        //查询不包含两端，取前一天结束到后一天开始，当天0点整的订单也要计入
+        OrderStatusBucketDTO bucket = orderMapper.countByStatusBuckets(
+                LocalDateTime.of(date.minusDays(1), LocalTime.MAX), LocalDateTime.of(date.plusDays(1), LocalTime.MIN));
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        counts.put(Orders.PENDING_PAYMENT, bucket.getPendingPayment());
+        counts.put(Orders.TO_BE_CONFIRMED, bucket.getToBeConfirmed());
+        counts.put(Orders.CONFIRMED, bucket.getConfirmed());
+        counts.put(Orders.DELIVERY_IN_PROGRESS, bucket.getDeliveryInProgress());
+        counts.put(Orders.COMPLETED, bucket.getCompleted());
+        counts.put(Orders.CANCELLED, bucket.getCancelled());
+        return counts;
+    }
+
+    private Map<Integer, Integer> loadInProgress() {
+        return toCounts(IN_PROGRESS_STATUSES, orderMapper.countGroupByStatus(null, null, IN_PROGRESS_STATUSES));
+    }
+
+    private Map<Integer, Integer> toCounts(List<Integer> statuses, List<OrderStatusCountDTO> list) {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        statuses.forEach(status -> counts.put(status, 0));
+        for (OrderStatusCountDTO statusCount : list) {
+            counts.put(statusCount.getStatus(), statusCount.getOrderCount());
+        }
+        return counts;
+    }
+
+    /**
+     * 一次MGET读取计数，有计数不存在时返回null
+     */
+    private Map<Integer, Integer> getCounts(List<Integer> statuses, List<String> keys) {
+        List<String> values;
+        try {
+            values = stringRedisTemplate.opsForValue().multiGet(keys);
+        } catch (RuntimeException e) {
+            log.warn("读取订单状态计数失败，改为查询数据库", e);
+            return null;
+        }
+        if (values == null || values.contains(null)) {
+            return null;
+        }
+
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        for (int i = 0; i < statuses.size(); i++) {
+            //校正与增减并发时计数可能短暂为负数，等待下一次校正
+            counts.put(statuses.get(i), Math.max(Integer.parseInt(values.get(i)), 0));
+        }
+        return counts;
+    }
+
+    /**
+     * 覆盖写入计数，由定时校正执行时在脚本中校验任务锁，过期持有者查到的旧数据不会覆盖新持有者写入的计数
+     */
+    private void save(List<Integer> statuses, List<String> keys, Map<Integer, Integer> counts) {
+        List<String> scriptKeys = new ArrayList<>(keys);
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(COUNT_TTL_DAYS)));
+        if (taskFence.isFenced()) {
+            scriptKeys.add(taskFence.getLockKey());
+            args.add(taskFence.getToken());
+        } else {
+            args.add("");
+        }
+        statuses.forEach(status -> args.add(String.valueOf(counts.get(status))));
+
+        try {
+            Long saved = stringRedisTemplate.execute(SAVE_SCRIPT, scriptKeys, args.toArray());
+            if (saved != null && saved == 0) {
+                log.warn("任务{}的租约已被其它节点接手，不保存订单状态计数", taskFence.getLockKey());
+            }
+        } catch (RuntimeException e) {
+            log.warn("保存订单状态计数失败", e);
+        }
+    }
+
+    private void addDelta(Map<String, Long> deltas, LocalDate date, Integer status, long delta) {
+        deltas.merge(dateKey(date, status), delta, Long::sum);
+        if (IN_PROGRESS_STATUSES.contains(status)) {
+            deltas.merge(inProgressKey(status), delta, Long::sum);
+        }
+    }
+
+    /**
+     * 在事务提交后增减计数，计数失败不影响订单操作，由定时校正修正
+     */
+    private void increment(Map<String, Long> deltas) {
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(deltas.keySet());
+        Object[] args = deltas.values().stream().map(String::valueOf).toArray();
+        Runnable action = () -> {
+            try {
+                stringRedisTemplate.execute(INCREMENT_SCRIPT, keys, args);
+            } catch (RuntimeException e) {
+                log.warn("更新订单状态计数失败：{}", deltas, e);
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private String dateKey(LocalDate date, Integer status) {
+        return ORDER_STATUS_COUNT_KEY + date + "::" + status;
+    }
+
+    private String inProgressKey(Integer status) {
+        return ORDER_STATUS_COUNT_KEY + IN_PROGRESS + "::" + status;
+    }
+}
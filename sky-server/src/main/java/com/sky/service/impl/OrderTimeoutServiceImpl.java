@@ -0,0 +1,216 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.OrderStatusCountService;
+import com.sky.service.OrderTimeoutService;
+import com.sky.task.TaskFence;
+import com.sky.utils.HashedTimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 订单超时取消
+ * 待付款订单的到期时间登记在Redis有序集合中，各节点共享且重启不丢失；
+ * 本节点下的订单同时放入时间轮，到期时立即触发一次集合扫描，不必等待定时任务
+ */
+@Service
+@Slf4j
+public class OrderTimeoutServiceImpl implements OrderTimeoutService, DisposableBean {
+
+    private static final String ORDER_TIMEOUT_KEY = "order_timeout";
+    private static final String TIMEOUT_CANCEL_REASON = "订单超时，自动取消";
+    private static final int BATCH_SIZE = 500;
+
+    //原子地取出并移除已到期的订单，多个节点同时扫描时每个订单只会被一个节点取到
+    private static final RedisScript<List> POP_EXPIRED_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'limit', 0, ARGV[2]) " +
+                    "if #ids > 0 then redis.call('zrem', KEYS[1], unpack(ids)) end " +
+                    "return ids", List.class);
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderStatusCountService orderStatusCountService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private TaskFence taskFence;
+
+    @Value("${sky.order.pay-timeout-minutes:15}")
+    private long payTimeoutMinutes;
+
+    private final HashedTimingWheel timingWheel = new HashedTimingWheel(1000, 512, "order-timeout-wheel");
+
+    //到期扫描在独立线程中执行，不占用时间轮线程和公共线程池
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-timeout-cancel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //同一时刻到期的多个订单合并为一次扫描，扫描期间到期的订单在扫描结束后再扫一次
+    private final AtomicBoolean processing = new AtomicBoolean(false);
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+
+    /**
+     * 登记待付款订单的超时时间
+     * @param orderId
+     * @param orderTime
+     */
+    @Override
+    public void schedule(Long orderId, LocalDateTime orderTime) {
+        LocalDateTime expireTime = orderTime.plusMinutes(payTimeoutMinutes);
+        long expireAt = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        stringRedisTemplate.opsForZSet().add(ORDER_TIMEOUT_KEY, String.valueOf(orderId), expireAt);
+        timingWheel.schedule(this::processExpiredAsync, expireAt - System.currentTimeMillis());
+    }
+
+    /**
+     * 订单已支付或已取消，移除超时登记
+     * @param orderId
+     */
+    @Override
+    public void remove(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(ORDER_TIMEOUT_KEY, String.valueOf(orderId));
+    }
+
+    /**
+     * 批量取消已到期的待付款订单
+     * @return
+     */
+    @Override
+    public int processExpired() {
+        int cancelled = 0;
+        while (true) {
+            List<String> ids = stringRedisTemplate.execute(POP_EXPIRED_SCRIPT,
+                    Collections.singletonList(ORDER_TIMEOUT_KEY),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(BATCH_SIZE));
+            if (ids == null || ids.isEmpty()) {
+                break;
+            }
+
+            List<Long> orderIds = ids.stream().map(Long::valueOf).collect(Collectors.toList());
+            try {
+                cancelled += cancelTimeoutOrders(orderIds);
+            } catch (RuntimeException e) {
+                //取消失败时放回集合，等待下一次扫描
+                long now = System.currentTimeMillis();
+                ids.forEach(id -> stringRedisTemplate.opsForZSet().add(ORDER_TIMEOUT_KEY, id, now));
+                throw e;
+            }
+
+            if (ids.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        if (cancelled > 0) {
+            log.info("超时取消订单{}个", cancelled);
+        }
+        return cancelled;
+    }
+
+    /**
+     * 兜底扫描数据库中已超时但未登记的待付款订单，如Redis数据丢失或上线前产生的订单
+     * @return
+     */
+    @Override
+    public int reconcile() {
+        LocalDateTime orderTime = LocalDateTime.now().minusMinutes(payTimeoutMinutes);
+        int cancelled = 0;
+        List<Long> orderIds;
+        do {
+            orderIds = orderMapper.getIdsByStatusAndOrderTime(Orders.PENDING_PAYMENT, orderTime, BATCH_SIZE);
+            if (orderIds.isEmpty()) {
+                break;
+            }
+            int rows = cancelTimeoutOrders(orderIds);
+            cancelled += rows;
+            //查到的订单都已被其它节点处理，避免重复查询同一批数据
+            if (rows == 0) {
+                break;
+            }
+        } while (orderIds.size() == BATCH_SIZE);
+        if (cancelled > 0) {
+            log.info("兜底扫描取消超时订单{}个", cancelled);
+        }
+        return cancelled;
+    }
+
+    private int cancelTimeoutOrders(List<Long> orderIds) {
+        //只取消仍处于待付款状态的订单，已支付或已被其它节点取消的订单不受影响
+        List<Orders> ordersList = orderMapper.getByStatusAndIds(Orders.PENDING_PAYMENT, orderIds);
+        if (ordersList.isEmpty()) {
+            return 0;
+        }
+
+        Orders fields = Orders.builder()
+                .cancelReason(TIMEOUT_CANCEL_REASON)
+                .cancelTime(LocalDateTime.now())
+                .build();
+        List<Long> ids = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        //由定时任务执行时先校验fencing token，租约已被其它节点接手时不修改
+        Integer updated = transactionTemplate.execute(status -> {
+            taskFence.check();
+            return orderMapper.transition(ids, Orders.PENDING_PAYMENT, Orders.CANCELLED, fields);
+        });
+        int rows = updated == null ? 0 : updated;
+
+        //查询之后有订单被并发修改时无法确定是哪些，交给计数的定时校正修正
+        if (rows == ids.size()) {
+            orderStatusCountService.recordTransition(ordersList, Orders.CANCELLED);
+        }
+        return rows;
+    }
+
+    private void processExpiredAsync() {
+        requested.set(true);
+        if (!processing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    while (requested.getAndSet(false)) {
+                        processExpired();
+                    }
+                } catch (RuntimeException e) {
+                    log.error("超时订单处理失败", e);
+                } finally {
+                    processing.set(false);
+                }
+                if (requested.get()) {
+                    processExpiredAsync();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //应用关闭中，到期的订单由其它节点或下次启动后的扫描处理
+            processing.set(false);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        timingWheel.stop();
+        executor.shutdownNow();
+    }
+}
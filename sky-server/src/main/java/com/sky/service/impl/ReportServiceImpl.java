@@ -1,13 +1,17 @@
 package com.sky.service.impl;
 
+import com.sky.annotation.ReadOnly;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
-import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.DailyBusinessStatsService;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -28,13 +32,19 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
+@ReadOnly
 public class ReportServiceImpl implements ReportService {
+    //模板中明细数据的起始行
+    private static final int DETAIL_FIRST_ROW = 7;
+    //SXSSF在内存中保留的行数，超出的行写入临时文件
+    private static final int EXPORT_ROW_WINDOW = 100;
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
-    private WorkspaceService workspaceService;
+    private DailyBusinessStatsService dailyBusinessStatsService;
 
     /**
      * 营业额数据统计
@@ -44,24 +54,15 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
-        List<LocalDate> dataList = new ArrayList<>();
-        dataList.add(begin);
-        while(!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dataList.add(begin);
-        }
+        List<LocalDate> dataList = getDateList(begin, end);
+
+        // 按天读取营业数据，营业额是指状态为“已完成”的订单金额合计
+        Map<LocalDate, DailyStatisticsDTO> statisticsMap = dailyBusinessStatsService.getDailyStatistics(begin, end);
 
         List<Double> turnoverList = new ArrayList<>();
         for (LocalDate date : dataList) {
-            // 查询date日期对应的营业额，营业额是指状态为“已完成”的订单金额合计
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Map map = new HashMap<>();
-            map.put("begin", beginTime);
-            map.put("end", endTime);
-            map.put("status", Orders.COMPLETED);
-            Double turnover = orderMapper.sumByMap(map);
+            DailyStatisticsDTO statistics = statisticsMap.get(date);
+            Double turnover = statistics == null ? null : statistics.getTurnover();
             turnover = turnover == null ? 0.0 : turnover;
             turnoverList.add(turnover);
         }
@@ -80,28 +81,22 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
-        List<LocalDate> dataList = new ArrayList<>();
-        dataList.add(begin);
-        while(!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dataList.add(begin);
-        }
+        List<LocalDate> dataList = getDateList(begin, end);
+
+        // 统计开始日期之前的用户总数，作为累计用户数的基数
+        Map map = new HashMap<>();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        Integer totalUser = userMapper.sumByMap(map);
+        totalUser = totalUser == null ? 0 : totalUser;
+
+        // 按天读取新增用户数
+        Map<LocalDate, DailyStatisticsDTO> statisticsMap = dailyBusinessStatsService.getDailyStatistics(begin, end);
 
         List<Integer> totalUserList = new ArrayList<>();
         List<Integer> newUserList = new ArrayList<>();
         for (LocalDate date : dataList) {
-            // 查询date日期对应的营业额，营业额是指状态为“已完成”的订单金额合计
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Map map = new HashMap<>();
-            map.put("end", endTime);
-            Integer totalUser = userMapper.sumByMap(map);
-            totalUser = totalUser == null ? 0 : totalUser;
-
-            map.put("begin", beginTime);
-            Integer newUser = userMapper.sumByMap(map);
-            newUser = newUser == null ? 0 : newUser;
+            Integer newUser = getNewUsers(statisticsMap.get(date));
+            totalUser += newUser;
 
             totalUserList.add(totalUser);
             newUserList.add(newUser);
@@ -122,22 +117,17 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
-        List<LocalDate> dataList = new ArrayList<>();
-        dataList.add(begin);
-        while(!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dataList.add(begin);
-        }
+        List<LocalDate> dataList = getDateList(begin, end);
+
+        // 按天读取订单数和有效订单数
+        Map<LocalDate, DailyStatisticsDTO> statisticsMap = dailyBusinessStatsService.getDailyStatistics(begin, end);
 
         List<Integer> orderCountList = new ArrayList<>();
         List<Integer> validOrderCountList = new ArrayList<>();
         for (LocalDate date : dataList) {
-            // 查询date日期对应的营业额，营业额是指状态为“已完成”的订单金额合计
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
+            DailyStatisticsDTO statistics = statisticsMap.get(date);
+            Integer orderCount = statistics == null || statistics.getOrderCount() == null ? 0 : statistics.getOrderCount();
+            Integer validOrderCount = statistics == null || statistics.getValidOrderCount() == null ? 0 : statistics.getValidOrderCount();
 
             orderCountList.add(orderCount);
             validOrderCountList.add(validOrderCount);
@@ -163,14 +153,29 @@ public class ReportServiceImpl implements ReportService {
                 .build();
     }
 
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap<>();
-        map.put("begin", begin);
-        map.put("end", end);
-        map.put("status", status);
-        Integer count = orderMapper.countByMap(map);
-        count = count == null ? 0 : count;
-        return count;
+    /**
+     * 生成begin到end（包含两端）的日期列表
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dataList = new ArrayList<>();
+        dataList.add(begin);
+        while(!begin.equals(end)) {
+            begin = begin.plusDays(1);
+            dataList.add(begin);
+        }
+        return dataList;
+    }
+
+    /**
+     * 获取某天的新增用户数，没有数据时为0
+     * @param statistics
+     * @return
+     */
+    private Integer getNewUsers(DailyStatisticsDTO statistics) {
+        return statistics == null || statistics.getNewUsers() == null ? 0 : statistics.getNewUsers();
     }
 
     /**
@@ -200,26 +205,38 @@ public class ReportServiceImpl implements ReportService {
 
     /**
      * 导出运营数据报表
+     * @param begin
+     * @param end
      * @param response
      */
     @Override
-    public void exportBussinessData(HttpServletResponse response) {
-        //1、查询数据库获取营业数据
-        LocalDate dateBegin = LocalDate.now().minusDays(30);
-        LocalDate dateEnd = LocalDate.now().minusDays(1);
-        //查询概览数据
-        BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(dateBegin, LocalTime.MIN), LocalDateTime.of(dateEnd, LocalTime.MAX));
-
+    public void exportBussinessData(LocalDate begin, LocalDate end, HttpServletResponse response) {
+        //1、按天读取营业数据
+        Map<LocalDate, DailyStatisticsDTO> statisticsMap = dailyBusinessStatsService.getDailyStatistics(begin, end);
+
+        //概览数据由每日数据累加得到
+        double turnover = 0.0;
+        int validOrderCount = 0;
+        int totalOrderCount = 0;
+        int newUsers = 0;
+        for (DailyStatisticsDTO statistics : statisticsMap.values()) {
+            turnover += statistics.getTurnover() == null ? 0.0 : statistics.getTurnover();
+            validOrderCount += statistics.getValidOrderCount() == null ? 0 : statistics.getValidOrderCount();
+            totalOrderCount += statistics.getOrderCount() == null ? 0 : statistics.getOrderCount();
+            newUsers += getNewUsers(statistics);
+        }
+        BusinessDataVO businessData = buildBusinessData(turnover, validOrderCount, totalOrderCount, newUsers);
 
-        //2、通过POI将数据写入excel
+        //2、通过POI将数据写入excel，模板自带的明细行直接填充，超出部分通过SXSSF流式写入
 
         InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
+        SXSSFWorkbook excel = null;
         try {
-            XSSFWorkbook excel = new XSSFWorkbook(in);
+            XSSFWorkbook template = new XSSFWorkbook(in);
             //填充数据
-            XSSFSheet sheet = excel.getSheet("Sheet1");
+            XSSFSheet sheet = template.getSheet("Sheet1");
             //时间
-            sheet.getRow(1).getCell(1).setCellValue("时间："+dateBegin+"至"+dateEnd);
+            sheet.getRow(1).getCell(1).setCellValue("时间："+begin+"至"+end);
             //概览数据
             XSSFRow row = sheet.getRow(3);
             row.getCell(2).setCellValue(businessData.getTurnover());
@@ -230,20 +247,40 @@ public class ReportServiceImpl implements ReportService {
             row.getCell(2).setCellValue(businessData.getValidOrderCount());
             row.getCell(4).setCellValue(businessData.getUnitPrice());
 
-            //填充明细数据
-            for (int i = 0; i < 30; i++) {
-                LocalDate date = dateBegin.plusDays(i);
-                //查询某一天营业数据
-                businessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN),LocalDateTime.of(date, LocalTime.MAX));
-
-                row = sheet.getRow(7 + i);
-                row.getCell(1).setCellValue(date.toString());
-                row.getCell(2).setCellValue(businessData.getTurnover());
-                row.getCell(3).setCellValue(businessData.getValidOrderCount());
-                row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
-                row.getCell(5).setCellValue(businessData.getUnitPrice());
-                row.getCell(6).setCellValue(businessData.getNewUsers());
+            //模板中第一行明细的样式，用于模板之外新建的明细行
+            XSSFRow styleRow = sheet.getRow(DETAIL_FIRST_ROW);
+            int templateLastRow = sheet.getLastRowNum();
+
+            excel = new SXSSFWorkbook(template, EXPORT_ROW_WINDOW);
+            Sheet streamingSheet = excel.getSheet("Sheet1");
 
+            //填充明细数据
+            int rowIndex = DETAIL_FIRST_ROW;
+            for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1), rowIndex++) {
+                DailyStatisticsDTO statistics = statisticsMap.get(date);
+                BusinessDataVO dailyData = statistics == null
+                        ? buildBusinessData(0.0, 0, 0, 0)
+                        : buildBusinessData(statistics.getTurnover() == null ? 0.0 : statistics.getTurnover(),
+                                statistics.getValidOrderCount() == null ? 0 : statistics.getValidOrderCount(),
+                                statistics.getOrderCount() == null ? 0 : statistics.getOrderCount(),
+                                getNewUsers(statistics));
+
+                Row detailRow;
+                if (rowIndex <= templateLastRow) {
+                    detailRow = sheet.getRow(rowIndex);
+                } else {
+                    detailRow = streamingSheet.createRow(rowIndex);
+                    detailRow.setHeight(styleRow.getHeight());
+                    for (int i = 1; i <= 6; i++) {
+                        detailRow.createCell(i).setCellStyle(styleRow.getCell(i).getCellStyle());
+                    }
+                }
+                detailRow.getCell(1).setCellValue(date.toString());
+                detailRow.getCell(2).setCellValue(dailyData.getTurnover());
+                detailRow.getCell(3).setCellValue(dailyData.getValidOrderCount());
+                detailRow.getCell(4).setCellValue(dailyData.getOrderCompletionRate());
+                detailRow.getCell(5).setCellValue(dailyData.getUnitPrice());
+                detailRow.getCell(6).setCellValue(dailyData.getNewUsers());
             }
 
             //3、通过输出流将excel下载到客户端浏览器
@@ -256,9 +293,41 @@ public class ReportServiceImpl implements ReportService {
 
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (excel != null) {
+                //删除SXSSF写出的临时文件
+                excel.dispose();
+            }
         }
 
     }
 
+    /**
+     * 根据营业额、订单数和新增用户数计算营业数据
+     * @param turnover
+     * @param validOrderCount
+     * @param totalOrderCount
+     * @param newUsers
+     * @return
+     */
+    private BusinessDataVO buildBusinessData(Double turnover, Integer validOrderCount, Integer totalOrderCount, Integer newUsers) {
+        Double unitPrice = 0.0;
+        Double orderCompletionRate = 0.0;
+        if(totalOrderCount != 0 && validOrderCount != 0){
+            //订单完成率
+            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
+            //平均客单价
+            unitPrice = turnover / validOrderCount;
+        }
+
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
+    }
+
 
 }
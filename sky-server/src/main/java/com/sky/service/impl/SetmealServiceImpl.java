@@ -3,8 +3,11 @@ package com.sky.service.impl;
 import com.alibaba.druid.support.spring.stat.annotation.Stat;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.annotation.ReadOnly;
+import com.sky.cache.PriceIndex;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
+import com.sky.converter.SetmealConverter;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Dish;
@@ -20,12 +23,12 @@ import com.sky.service.SetmealService;
 import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -41,12 +44,15 @@ public class SetmealServiceImpl implements SetmealService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private DishMapper dishMapper;
+    @Autowired
+    private PriceIndex priceIndex;
 
     /**
      * 条件查询
      * @param setmeal
      * @return
      */
+    @ReadOnly
     public List<Setmeal> list(Setmeal setmeal) {
         List<Setmeal> list = setmealMapper.list(setmeal);
         return list;
@@ -57,6 +63,7 @@ public class SetmealServiceImpl implements SetmealService {
      * @param id
      * @return
      */
+    @ReadOnly
     public List<DishItemVO> getDishItemById(Long id) {
         return setmealMapper.getDishItemBySetmealId(id);
     }
@@ -84,8 +91,7 @@ public class SetmealServiceImpl implements SetmealService {
     public void save(SetmealDTO setmealDTO) {
 
         //添加套餐
-        Setmeal setmeal = new Setmeal();
-        BeanUtils.copyProperties(setmealDTO, setmeal);
+        Setmeal setmeal = SetmealConverter.INSTANCE.toSetmeal(setmealDTO);
         setmeal.setStatus(StatusConstant.DISABLE);
         setmealMapper.insert(setmeal);
 
@@ -95,8 +101,7 @@ public class SetmealServiceImpl implements SetmealService {
             sd.setSetmealId(setmeal.getId());
         });
         setmealDishMapper.insertBatch(setmealDishes);
-
-
+        priceIndex.refreshSetmeals(Collections.singletonList(setmeal.getId()));
     }
 
     /**
@@ -108,8 +113,7 @@ public class SetmealServiceImpl implements SetmealService {
     public SetmealVO getSetmealById(Long id) {
         //首先在套餐表查询套餐信息
         Setmeal setmeal = setmealMapper.getById(id);
-        SetmealVO setmealVO = new SetmealVO();
-        BeanUtils.copyProperties(setmeal, setmealVO);
+        SetmealVO setmealVO = SetmealConverter.INSTANCE.toSetmealVO(setmeal);
 
         //再查询套餐包含 的菜品信息
         List<SetmealDish> setmealDishes = setmealDishMapper.getSetmealDishBySetmealId(id);
@@ -132,8 +136,7 @@ public class SetmealServiceImpl implements SetmealService {
         setmealDishMapper.deleteBySetmealIds(ids);
 
         //修改套餐信息
-        Setmeal setmeal = new Setmeal();
-        BeanUtils.copyProperties(setmealDTO, setmeal);
+        Setmeal setmeal = SetmealConverter.INSTANCE.toSetmeal(setmealDTO);
         setmeal.setStatus(StatusConstant.DISABLE);
         setmealMapper.update(setmeal);
 
@@ -141,6 +144,7 @@ public class SetmealServiceImpl implements SetmealService {
         List<SetmealDish> setmealDishes = setmealDTO.getSetmealDishes();
         setmealDishes.stream().forEach((sd) ->{sd.setSetmealId(setmeal.getId());});
         setmealDishMapper.insertBatch(setmealDishes);
+        priceIndex.refreshSetmeals(Collections.singletonList(setmeal.getId()));
     }
 
     /**
@@ -162,7 +166,7 @@ public class SetmealServiceImpl implements SetmealService {
 
         //删除套餐信息
         setmealMapper.deleteByIds(ids);
-
+        priceIndex.refreshSetmeals(ids);
     }
 
     /**
@@ -174,10 +178,8 @@ public class SetmealServiceImpl implements SetmealService {
     public void startOrStop(Integer status, Long id) {
         //如果是起售，查询套餐中菜品是否都是可售状态
         if(status==StatusConstant.ENABLE){
-            List<SetmealDish> setmealDishes = setmealDishMapper.getSetmealDishBySetmealId(id);
-            for (SetmealDish setmealDish : setmealDishes) {
-                Long dishId = setmealDish.getDishId();
-                Dish dish = dishMapper.getById(dishId);
+            List<Dish> dishList = dishMapper.getBySetmealId(id);
+            for (Dish dish : dishList) {
                 if(dish.getStatus() == StatusConstant.DISABLE){
                     throw  new SetmealEnableFailedException(MessageConstant.SETMEAL_ENABLE_FAILED);
                 }
@@ -190,7 +192,7 @@ public class SetmealServiceImpl implements SetmealService {
                 .build();
 
         setmealMapper.update(setmeal);
-
+        priceIndex.refreshSetmeals(Collections.singletonList(id));
     }
 
 
@@ -1,5 +1,6 @@
 package com.sky.service.impl;
 
+import com.alibaba.fastjson.JSON;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
@@ -9,22 +10,98 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.ShoppingCartMapper;
 import com.sky.service.ShoppingCartService;
-import com.sky.vo.SetmealVO;
-import org.springframework.beans.BeanUtils;
+import com.sky.task.TaskFence;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * 购物车业务实现
+ * 购物车保存在Redis中，每个用户两个hash：一个存放商品信息，一个存放数量（通过HINCRBY增减），
+ * field为 dish_菜品id_口味 或 setmeal_套餐id
+ * 用户第一次操作购物车时，把数据库中的购物车导入Redis，之后以Redis为准
+ */
 @Service
+@Slf4j
 public class ShoppingCartServiceImpl implements ShoppingCartService {
+
+    //购物车商品信息 hash，key规则：shopping_cart_用户id
+    private static final String CART_KEY = "shopping_cart_";
+    //购物车商品数量 hash，key规则：shopping_cart_number_用户id
+    private static final String CART_NUMBER_KEY = "shopping_cart_number_";
+    //有变更、等待写回数据库的用户id集合
+    private static final String CART_DIRTY_KEY = "shopping_cart_dirty";
+    //已从数据库导入购物车的用户id集合
+    private static final String CART_LOADED_KEY = "shopping_cart_loaded";
+    //每次写回的最大用户数
+    private static final int FLUSH_BATCH_SIZE = 100;
+
+    //读取商品信息和数量后删除两个hash
+    private static final RedisScript<List> DRAIN_SCRIPT = new DefaultRedisScript<>(
+            "local lines = redis.call('hgetall', KEYS[1]) " +
+                    "local numbers = redis.call('hgetall', KEYS[2]) " +
+                    "redis.call('del', KEYS[1], KEYS[2]) " +
+                    "return {lines, numbers}", List.class);
+
+    //商品信息已存在时只增加数量；不存在且传入了商品信息时同时写入信息和数量，返回-1表示需要先查询商品信息
+    //两个hash在同一个脚本中修改，下单取出购物车时不会只取到数量而没有商品信息
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then " +
+                    "if ARGV[3] == '' then return -1 end " +
+                    "redis.call('hset', KEYS[1], ARGV[1], ARGV[3]) " +
+                    "end " +
+                    "return redis.call('hincrby', KEYS[2], ARGV[1], ARGV[2])", Long.class);
+
+    //数量减一，减为0时同时删除商品信息和数量
+    private static final RedisScript<Long> SUB_SCRIPT = new DefaultRedisScript<>(
+            "local number = redis.call('hincrby', KEYS[2], ARGV[1], -1) " +
+                    "if number <= 0 then " +
+                    "redis.call('hdel', KEYS[1], ARGV[1]) " +
+                    "redis.call('hdel', KEYS[2], ARGV[1]) " +
+                    "end " +
+                    "return number", Long.class);
+
+    //导入数据库中的购物车：用户已导入过时返回0；Redis中已有该用户的购物车时不覆盖，返回2；否则写入商品信息和数量，返回1
+    //ARGV[1]为用户id，之后每三个参数为 field、商品信息json、数量
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('sadd', KEYS[3], ARGV[1]) == 0 then return 0 end " +
+                    "if redis.call('exists', KEYS[1]) == 1 or redis.call('exists', KEYS[2]) == 1 then return 2 end " +
+                    "for i = 2, #ARGV, 3 do " +
+                    "redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+                    "redis.call('hincrby', KEYS[2], ARGV[i], ARGV[i + 2]) " +
+                    "end " +
+                    "return 1", Long.class);
+
     @Autowired
     private ShoppingCartMapper shoppingCartMapper;
     @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private TaskFence taskFence;
+
+    //是否开启购物车写回数据库
+    @Value("${sky.shopping-cart.write-behind:false}")
+    private boolean writeBehind;
 
     /**
      * 添加购物车
@@ -32,41 +109,39 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //1、判断当前菜品或者套餐在购物车是否存在
-        ShoppingCart shoppingCart = new ShoppingCart();
-        BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
-        Long id = BaseContext.getCurrentId();
-        shoppingCart.setUserId(id);
-
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-
-        //如果存在，直接加一
-        if(list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
-            return;
-        }
-        //如果不存在，直接往购物车里面添加一条数据
-        //判断是菜品还是套餐
-        Long dishId = shoppingCart.getDishId();
-        if(dishId != null){
-            Dish dish = dishMapper.getById(dishId);
-            shoppingCart.setName(dish.getName());
-            shoppingCart.setImage(dish.getImage());
-            shoppingCart.setAmount(dish.getPrice());
-        }else {
-            Long setmealId = shoppingCart.getSetmealId();
-
-            Setmeal setmeal = setmealMapper.getById(setmealId);
-            shoppingCart.setName(setmeal.getName());
-            shoppingCart.setImage(setmeal.getImage());
-            shoppingCart.setAmount(setmeal.getPrice());
-        }
-        shoppingCart.setNumber(1);
-        shoppingCart.setCreateTime(LocalDateTime.now());
+        Long userId = BaseContext.getCurrentId();
+        String field = getField(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+        ensureLoaded(userId);
 
-        shoppingCartMapper.insert(shoppingCart);
+        //已存在的商品数量直接加一，只需一次Redis操作
+        Long number = add(userId, field, 1, "");
+
+        //如果是新加入的商品，查询商品信息后与数量一起写入
+        if (number == -1) {
+            ShoppingCart shoppingCart = ShoppingCart.builder()
+                    .userId(userId)
+                    .dishId(shoppingCartDTO.getDishId())
+                    .setmealId(shoppingCartDTO.getSetmealId())
+                    .dishFlavor(shoppingCartDTO.getDishFlavor())
+                    .createTime(LocalDateTime.now())
+                    .build();
+
+            //判断是菜品还是套餐
+            Long dishId = shoppingCart.getDishId();
+            if(dishId != null){
+                Dish dish = dishMapper.getById(dishId);
+                shoppingCart.setName(dish.getName());
+                shoppingCart.setImage(dish.getImage());
+                shoppingCart.setAmount(dish.getPrice());
+            }else {
+                Setmeal setmeal = setmealMapper.getById(shoppingCart.getSetmealId());
+                shoppingCart.setName(setmeal.getName());
+                shoppingCart.setImage(setmeal.getImage());
+                shoppingCart.setAmount(setmeal.getPrice());
+            }
+            add(userId, field, 1, JSON.toJSONString(shoppingCart));
+        }
+        markDirty(userId);
     }
 
     /**
@@ -75,14 +150,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public List<ShoppingCart> list() {
-        Long id = BaseContext.getCurrentId();
-
-        ShoppingCart cart = ShoppingCart.builder()
-                .userId(id)
-                .build();
-
-        List<ShoppingCart> list = shoppingCartMapper.list(cart);
-        return list;
+        return listByUserId(BaseContext.getCurrentId());
     }
 
     /**
@@ -90,8 +158,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void clean() {
-        Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.deleteByUserId(userId);
+        cleanByUserId(BaseContext.getCurrentId());
     }
 
     /**
@@ -100,23 +167,242 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void sub(ShoppingCartDTO shoppingCartDTO) {
-        ShoppingCart shoppingCart = new ShoppingCart();
-        BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
-        shoppingCart.setUserId(userId);
-
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        if(list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            Integer number = cart.getNumber();
-
-            //如果商品数量为1，直接删除
-            if(number == 1) {
-                shoppingCartMapper.deleteById(cart.getId());
-            }else {//否则数量减1
-                cart.setNumber(number - 1);
-                shoppingCartMapper.updateNumberById(cart);
+        String field = getField(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+        ensureLoaded(userId);
+
+        //如果商品数量减为0，直接删除
+        stringRedisTemplate.execute(SUB_SCRIPT, Arrays.asList(CART_KEY + userId, CART_NUMBER_KEY + userId), field);
+        markDirty(userId);
+    }
+
+    /**
+     * 查询指定用户的购物车
+     * @param userId
+     * @return
+     */
+    @Override
+    public List<ShoppingCart> listByUserId(Long userId) {
+        ensureLoaded(userId);
+        Map<String, String> lines = hashOps().entries(CART_KEY + userId);
+        Map<String, String> numbers = hashOps().entries(CART_NUMBER_KEY + userId);
+        return toShoppingCartList(userId, lines, numbers);
+    }
+
+    /**
+     * 取出并清空指定用户的购物车
+     * 下单时使用，避免读取购物车和清空购物车之间新加入的商品被一起删除
+     * @param userId
+     * @return
+     */
+    @Override
+    public List<ShoppingCart> drainByUserId(Long userId) {
+        ensureLoaded(userId);
+        List<List<String>> result = stringRedisTemplate.execute(DRAIN_SCRIPT,
+                Arrays.asList(CART_KEY + userId, CART_NUMBER_KEY + userId));
+        markDirty(userId);
+        if (result == null || result.size() < 2) {
+            return new ArrayList<>();
+        }
+        return toShoppingCartList(userId, toMap(result.get(0)), toMap(result.get(1)));
+    }
+
+    /**
+     * 清空指定用户的购物车
+     * @param userId
+     */
+    @Override
+    public void cleanByUserId(Long userId) {
+        //先导入再删除，避免数据库中的旧数据在之后被导入
+        ensureLoaded(userId);
+        List<String> keys = new ArrayList<>();
+        keys.add(CART_KEY + userId);
+        keys.add(CART_NUMBER_KEY + userId);
+        stringRedisTemplate.delete(keys);
+        markDirty(userId);
+    }
+
+    /**
+     * 批量加入购物车
+     * @param userId
+     * @param shoppingCartList
+     */
+    @Override
+    public void addBatch(Long userId, List<ShoppingCart> shoppingCartList) {
+        ensureLoaded(userId);
+        for (ShoppingCart shoppingCart : shoppingCartList) {
+            String field = getField(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor());
+            Integer number = shoppingCart.getNumber();
+
+            shoppingCart.setId(null);
+            shoppingCart.setNumber(null);
+            add(userId, field, number == null ? 1 : number, JSON.toJSONString(shoppingCart));
+        }
+        markDirty(userId);
+    }
+
+    /**
+     * 将有变更的购物车写回数据库
+     * 先校验fencing token，租约已被其它节点接手时不再取出待写回的用户
+     * @return 写回的用户数
+     */
+    @Override
+    @Transactional
+    public int flushToDatabase() {
+        taskFence.check();
+
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(CART_DIRTY_KEY, FLUSH_BATCH_SIZE);
+        if (userIds == null || userIds.isEmpty()) {
+            return 0;
+        }
+
+        //写回失败或事务回滚时把用户id放回集合，等待下一次写回
+        boolean synchronization = TransactionSynchronizationManager.isSynchronizationActive();
+        if (synchronization) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        requeueDirty(userIds);
+                    }
+                }
+            });
+        }
+        try {
+            for (String id : userIds) {
+                Long userId = Long.valueOf(id);
+                List<ShoppingCart> list = listByUserId(userId);
+
+                shoppingCartMapper.deleteByUserId(userId);
+                if (!list.isEmpty()) {
+                    shoppingCartMapper.insertBatch(list);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (!synchronization) {
+                requeueDirty(userIds);
             }
+            throw e;
+        }
+        return userIds.size();
+    }
+
+    /**
+     * 增加购物车商品数量
+     * @param userId
+     * @param field
+     * @param delta
+     * @param line 商品信息json，为空字符串时只修改已存在的商品
+     * @return 修改后的数量，商品不存在且未传入商品信息时返回-1
+     */
+    private Long add(Long userId, String field, int delta, String line) {
+        return stringRedisTemplate.execute(ADD_SCRIPT, Arrays.asList(CART_KEY + userId, CART_NUMBER_KEY + userId),
+                field, String.valueOf(delta), line);
+    }
+
+    /**
+     * 用户的购物车尚未导入Redis时，从数据库导入
+     * 未开启写回时数据库中的购物车不再更新，导入后删除，避免Redis数据丢失后导入过期的数据
+     * @param userId
+     */
+    private void ensureLoaded(Long userId) {
+        Boolean loaded = stringRedisTemplate.opsForSet().isMember(CART_LOADED_KEY, String.valueOf(userId));
+        if (Boolean.TRUE.equals(loaded)) {
+            return;
+        }
+
+        List<ShoppingCart> list = shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(userId));
+        for (ShoppingCart shoppingCart : list) {
+            String field = getField(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor());
+            Integer number = shoppingCart.getNumber();
+
+            shoppingCart.setId(null);
+            shoppingCart.setNumber(null);
+            args.add(field);
+            args.add(JSON.toJSONString(shoppingCart));
+            args.add(String.valueOf(number == null ? 1 : number));
+        }
+        Long result = stringRedisTemplate.execute(LOAD_SCRIPT,
+                Arrays.asList(CART_KEY + userId, CART_NUMBER_KEY + userId, CART_LOADED_KEY), args.toArray());
+        if (result != null && result == 1 && !list.isEmpty()) {
+            log.info("用户{}的购物车从数据库导入{}条", userId, list.size());
         }
+        if (result != null && result != 0 && !writeBehind && !list.isEmpty()) {
+            shoppingCartMapper.deleteByUserId(userId);
+        }
+    }
+
+    private void requeueDirty(List<String> userIds) {
+        try {
+            stringRedisTemplate.opsForSet().add(CART_DIRTY_KEY, userIds.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            log.error("购物车写回失败，用户id放回待写回集合也失败：{}", userIds, e);
+        }
+    }
+
+    /**
+     * 将商品信息和数量组装为购物车列表，按加入时间排序
+     * @param userId
+     * @param lines
+     * @param numbers
+     * @return
+     */
+    private List<ShoppingCart> toShoppingCartList(Long userId, Map<String, String> lines, Map<String, String> numbers) {
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<String, String> entry : lines.entrySet()) {
+            String number = numbers.get(entry.getKey());
+            if (number == null || Integer.parseInt(number) <= 0) {
+                continue;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject(entry.getValue(), ShoppingCart.class);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(Integer.valueOf(number));
+            list.add(shoppingCart);
+        }
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        return list;
+    }
+
+    /**
+     * HGETALL返回的field、value交替列表转为map
+     * @param entries
+     * @return
+     */
+    private Map<String, String> toMap(List<String> entries) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+            map.put(entries.get(i), entries.get(i + 1));
+        }
+        return map;
+    }
+
+    /**
+     * 记录购物车有变更的用户，供写回数据库使用
+     * @param userId
+     */
+    private void markDirty(Long userId) {
+        if (writeBehind) {
+            stringRedisTemplate.opsForSet().add(CART_DIRTY_KEY, String.valueOf(userId));
+        }
+    }
+
+    /**
+     * 生成购物车hash的field
+     * @param dishId
+     * @param setmealId
+     * @param dishFlavor
+     * @return
+     */
+    private String getField(Long dishId, Long setmealId, String dishFlavor) {
+        if (dishId != null) {
+            return "dish_" + dishId + "_" + (dishFlavor == null ? "" : dishFlavor);
+        }
+        return "setmeal_" + setmealId;
+    }
+
+    private HashOperations<String, String, String> hashOps() {
+        return stringRedisTemplate.opsForHash();
     }
 }
@@ -1,27 +1,49 @@
 package com.sky.service.impl;
 
-import com.sky.constant.StatusConstant;
+import com.sky.annotation.ReadOnly;
+import com.sky.constant.MessageConstant;
+import com.sky.dto.OrderStatusBucketDTO;
 import com.sky.entity.Orders;
+import com.sky.exception.WorkspaceBusinessException;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.WorkspaceProperties;
+import com.sky.service.OrderStatusCountService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.WorkspaceVO;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.api.hint.HintManager;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * 工作台
+ * 各项统计查询互不依赖，提交到专用的有界线程池并发执行，接口耗时取决于最慢的一条查询而不是所有查询之和
+ */
 @Service
+@ReadOnly
 @Slf4j
-public class WorkspaceServiceImpl implements WorkspaceService {
+public class WorkspaceServiceImpl implements WorkspaceService, DisposableBean {
 
     @Autowired
     private OrderMapper orderMapper;
@@ -31,6 +53,26 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private OrderStatusCountService orderStatusCountService;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    public WorkspaceServiceImpl(WorkspaceProperties workspaceProperties) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        //线程数即同时占用的数据库连接数上限，队列满时拒绝而不是在调用线程中执行，避免拖慢请求线程
+        this.executor = new ThreadPoolExecutor(workspaceProperties.getThreads(), workspaceProperties.getThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(workspaceProperties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "workspace-query-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeoutMillis = workspaceProperties.getTimeoutMillis();
+    }
 
     /**
      * 根据时间段统计营业数据
@@ -39,49 +81,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end) {
-        /**
-         * 营业额：当日已完成订单的总金额
-         * 有效订单：当日已完成订单的数量
-         * 订单完成率：有效订单数 / 总订单数
-         * 平均客单价：营业额 / 有效订单数
-         * 新增用户：当日新增用户的数量
-         */
-
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
-
-        //查询总订单数
-        Integer totalOrderCount = orderMapper.countByMap(map);
-
-        map.put("status", Orders.COMPLETED);
-        //营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null? 0.0 : turnover;
-
-        //有效订单数
-        Integer validOrderCount = orderMapper.countByMap(map);
-
-        Double unitPrice = 0.0;
-
-        Double orderCompletionRate = 0.0;
-        if(totalOrderCount != 0 && validOrderCount != 0){
-            //订单完成率
-            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
-            //平均客单价
-            unitPrice = turnover / validOrderCount;
-        }
-
-        //新增用户数
-        Integer newUsers = userMapper.sumByMap(map);
-
-        return BusinessDataVO.builder()
-                .turnover(turnover)
-                .validOrderCount(validOrderCount)
-                .orderCompletionRate(orderCompletionRate)
-                .unitPrice(unitPrice)
-                .newUsers(newUsers)
-                .build();
+        return join(getBusinessDataAsync(begin, end));
     }
 
 
@@ -91,28 +91,23 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
+        //当天各状态订单数由Redis计数一次读取
+        Map<Integer, Integer> counts = orderStatusCountService.countByDate(LocalDate.now());
 
         //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
+        Integer waitingOrders = counts.get(Orders.TO_BE_CONFIRMED);
 
         //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
+        Integer deliveredOrders = counts.get(Orders.CONFIRMED);
 
         //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
+        Integer completedOrders = counts.get(Orders.COMPLETED);
 
         //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
+        Integer cancelledOrders = counts.get(Orders.CANCELLED);
 
         //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
+        Integer allOrders = counts.values().stream().mapToInt(Integer::intValue).sum();
 
         return OrderOverViewVO.builder()
                 .waitingOrders(waitingOrders)
@@ -129,17 +124,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public DishOverViewVO getDishOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = dishMapper.countByMap(map);
-
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = dishMapper.countByMap(map);
-
-        return DishOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
-                .build();
+        return join(getDishOverViewAsync());
     }
 
     /**
@@ -148,16 +133,133 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public SetmealOverViewVO getSetmealOverView() {
+        return join(getSetmealOverViewAsync());
+    }
+
+    /**
+     * 查询工作台全部数据，所有统计查询一起并发执行
+     * @param begin
+     * @param end
+     * @return
+     */
+    public WorkspaceVO getAll(LocalDateTime begin, LocalDateTime end) {
+        CompletableFuture<BusinessDataVO> businessData = getBusinessDataAsync(begin, end);
+        CompletableFuture<OrderOverViewVO> orderOverView = supplyAsync(this::getOrderOverView);
+        CompletableFuture<DishOverViewVO> dishOverView = getDishOverViewAsync();
+        CompletableFuture<SetmealOverViewVO> setmealOverView = getSetmealOverViewAsync();
+
+        return join(CompletableFuture.allOf(businessData, orderOverView, dishOverView, setmealOverView)
+                .thenApply(v -> WorkspaceVO.builder()
+                        .businessData(businessData.join())
+                        .orderOverView(orderOverView.join())
+                        .dishOverView(dishOverView.join())
+                        .setmealOverView(setmealOverView.join())
+                        .build()));
+    }
+
+    /**
+     * 订单数、有效订单数和营业额一次扫描得到，与新增用户数并发查询，全部完成后再计算完成率和客单价
+     */
+    private CompletableFuture<BusinessDataVO> getBusinessDataAsync(LocalDateTime begin, LocalDateTime end) {
+        /**
+         * 营业额：当日已完成订单的总金额
+         * 有效订单：当日已完成订单的数量
+         * 订单完成率：有效订单数 / 总订单数
+         * 平均客单价：营业额 / 有效订单数
+         * 新增用户：当日新增用户的数量
+         */
+
         Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = setmealMapper.countByMap(map);
+        map.put("begin",begin);
+        map.put("end",end);
 
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = setmealMapper.countByMap(map);
+        //总订单数、有效订单数、营业额
+        CompletableFuture<OrderStatusBucketDTO> bucketFuture = supplyAsync(() -> orderMapper.countByStatusBuckets(begin, end));
 
-        return SetmealOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
-                .build();
+        //新增用户数
+        CompletableFuture<Integer> newUsersFuture = supplyAsync(() -> userMapper.sumByMap(map));
+
+        return bucketFuture.thenCombine(newUsersFuture, (bucket, newUsers) -> {
+            Integer totalOrderCount = bucket.getTotal();
+            Double turnover = bucket.getTurnover();
+            Integer validOrderCount = bucket.getCompleted();
+
+            Double unitPrice = 0.0;
+
+            Double orderCompletionRate = 0.0;
+            if(totalOrderCount != 0 && validOrderCount != 0){
+                //订单完成率
+                orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
+                //平均客单价
+                unitPrice = turnover / validOrderCount;
+            }
+
+            return BusinessDataVO.builder()
+                    .turnover(turnover)
+                    .validOrderCount(validOrderCount)
+                    .orderCompletionRate(orderCompletionRate)
+                    .unitPrice(unitPrice)
+                    .newUsers(newUsers)
+                    .build();
+        });
+    }
+
+    /**
+     * 起售、停售数量一次扫描得到
+     */
+    private CompletableFuture<DishOverViewVO> getDishOverViewAsync() {
+        return supplyAsync(dishMapper::countByStatusBuckets);
+    }
+
+    private CompletableFuture<SetmealOverViewVO> getSetmealOverViewAsync() {
+        return supplyAsync(setmealMapper::countByStatusBuckets);
+    }
+
+    /**
+     * 提交到工作台线程池执行，只提交单条查询，组合结果不占用线程池，避免线程池中的任务互相等待
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        //读写分离的路由只对当前线程有效，从库延迟改为读主库时，查询线程也要读主库
+        boolean masterRouteOnly = HintManager.isMasterRouteOnly();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                if (!masterRouteOnly) {
+                    return supplier.get();
+                }
+                try (HintManager hintManager = HintManager.getInstance()) {
+                    hintManager.setMasterRouteOnly();
+                    return supplier.get();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("工作台查询线程池已满，活动线程{}个，排队{}个", executor.getActiveCount(), executor.getQueue().size());
+            throw new WorkspaceBusinessException(MessageConstant.WORKSPACE_QUERY_BUSY);
+        }
+    }
+
+    /**
+     * 等待查询结果，超时后不再等待，已提交的查询在后台执行完成后丢弃
+     */
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("工作台查询超过{}ms未完成", timeoutMillis);
+            throw new WorkspaceBusinessException(MessageConstant.WORKSPACE_QUERY_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WorkspaceBusinessException(MessageConstant.WORKSPACE_QUERY_TIMEOUT);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
     }
 }
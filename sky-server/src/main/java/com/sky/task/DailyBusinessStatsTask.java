@@ -0,0 +1,35 @@
+package com.sky.task;
+
+import com.sky.annotation.DistributedTask;
+import com.sky.service.DailyBusinessStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@Slf4j
+public class DailyBusinessStatsTask {
+
+    //每次校正最近几天的汇总数据，覆盖跨天完成的订单
+    private static final int RECONCILE_DAYS = 7;
+
+    @Autowired
+    private DailyBusinessStatsService dailyBusinessStatsService;
+
+    /**
+     * 校正营业数据汇总表
+     * 每天凌晨一点半，在派送中订单处理完成之后执行
+     */
+    @Scheduled(cron = "0 30 1 * * ?")
+    @DistributedTask(value = "reconcileDailyBusinessStats", leaseSeconds = 600, minHoldSeconds = 60)
+    public void reconcileDailyBusinessStats(){
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(RECONCILE_DAYS - 1);
+        log.info("定时校正营业数据汇总：{}--{}", begin, end);
+
+        dailyBusinessStatsService.reconcile(begin, end);
+    }
+}
@@ -1,41 +1,55 @@
 package com.sky.task;
 
+import com.sky.annotation.DistributedTask;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.service.DailyBusinessStatsService;
+import com.sky.service.OrderService;
+import com.sky.service.OrderStatusCountService;
+import com.sky.service.OrderTimeoutService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class OrderTask {
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private DailyBusinessStatsService dailyBusinessStatsService;
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderStatusCountService orderStatusCountService;
 
     /**
      * 处理超时订单
+     * 订单到期时由时间轮触发取消，这里每分钟补扫一次Redis中已到期的订单，如其它节点重启前未处理的订单
      */
     @Scheduled(cron = "0 * * * * ?")
-    public void processTimeoutOrder(){
-        log.info("定时处理超时订单：{}", LocalDateTime.now());
-
-        LocalDateTime time = LocalDateTime.now().plusMinutes(-15);
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTime(Orders.PENDING_PAYMENT, time);
-
-        if(ordersList!=null && ordersList.size()>0){
-            for(Orders order : ordersList){
-                order.setStatus(Orders.CANCELLED);
-                order.setCancelReason("订单超时，自动取消");
-                order.setCancelTime(LocalDateTime.now());
-                orderMapper.update(order);
-            }
-        }
-
+    @DistributedTask(value = "processTimeoutOrder", leaseSeconds = 50, minHoldSeconds = 10)
+    public int processTimeoutOrder(){
+        return orderTimeoutService.processExpired();
+    }
 
+    /**
+     * 兜底扫描数据库中未登记到Redis的超时订单
+     * 每小时一次
+     */
+    @Scheduled(cron = "0 0 * * * ?")
+    @DistributedTask(value = "reconcileTimeoutOrder", leaseSeconds = 600, minHoldSeconds = 60)
+    public int reconcileTimeoutOrder(){
+        log.info("兜底扫描超时订单：{}", LocalDateTime.now());
+        return orderTimeoutService.reconcile();
     }
 
     /**
@@ -43,15 +57,37 @@ public class OrderTask {
      * 每天凌晨一点
      */
     @Scheduled(cron = "0 0 1 * * ?")
-    public void processDeliveryOrder(){
+    @DistributedTask(value = "processDeliveryOrder", leaseSeconds = 600, minHoldSeconds = 60)
+    public int processDeliveryOrder(){
         log.info("定时处理处于派送中的订单：{}", LocalDateTime.now());
 
         List<Orders> ordersList = orderMapper.getByStatusAndOrderTime(Orders.DELIVERY_IN_PROGRESS, LocalDateTime.now().plusMinutes(-60));
-        if(ordersList!=null && ordersList.size()>0){
+        if(ordersList == null || ordersList.size() == 0){
+            return 0;
+        }
+
+        List<Long> ids = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        int rows = orderService.transition(ids, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, null);
+        log.info("派送中的订单{}个，完成{}个", ids.size(), rows);
+
+        //部分订单已被其它操作修改时无法确定是哪些，交给营业数据的每日校准和状态计数的定时校正修正
+        if (rows == ids.size()) {
+            orderStatusCountService.recordTransition(ordersList, Orders.COMPLETED);
             for(Orders order : ordersList){
-                order.setStatus(Orders.COMPLETED);
-                orderMapper.update(order);
+                dailyBusinessStatsService.recordOrderCompleted(order.getOrderTime(), order.getAmount());
             }
         }
+        return rows;
+    }
+
+    /**
+     * 根据订单表校正Redis中的订单状态计数
+     * 每五分钟一次
+     */
+    @Scheduled(cron = "0 */5 * * * ?")
+    @DistributedTask(value = "reconcileOrderStatusCount", leaseSeconds = 240, minHoldSeconds = 30)
+    public void reconcileOrderStatusCount(){
+        orderStatusCountService.reconcile(LocalDate.now());
+        orderStatusCountService.reconcileInProgress();
     }
 }
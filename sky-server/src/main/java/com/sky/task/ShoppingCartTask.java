@@ -0,0 +1,34 @@
+package com.sky.task;
+
+import com.sky.annotation.DistributedTask;
+import com.sky.service.ShoppingCartService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 购物车写回数据库，仅在开启 sky.shopping-cart.write-behind 时生效
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "sky.shopping-cart", name = "write-behind", havingValue = "true")
+public class ShoppingCartTask {
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    /**
+     * 每隔5秒将有变更的购物车写回shopping_cart表
+     */
+    @Scheduled(fixedDelay = 5000)
+    @DistributedTask(value = "flushShoppingCart", leaseSeconds = 30)
+    public int flushShoppingCart() {
+        int count = shoppingCartService.flushToDatabase();
+        if (count > 0) {
+            log.info("购物车写回数据库，用户数：{}", count);
+        }
+        return count;
+    }
+}
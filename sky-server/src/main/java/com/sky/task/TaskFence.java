@@ -0,0 +1,80 @@
+package com.sky.task;
+
+import com.sky.context.TaskContext;
+import com.sky.exception.TaskFencedException;
+import com.sky.mapper.TaskFenceMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 分布式任务写入的fencing校验
+ * 节点长时间停顿后租约过期，其它节点已接手同一任务时，过期持有者的写入被拒绝：
+ * 数据库写入在同一事务中先校验并推进task_fence表中的token，Redis写入在脚本中比较任务锁的值
+ * 不在分布式任务中执行时不校验
+ */
+@Component
+public class TaskFence {
+
+    private static final String TASK_LOCK_PREFIX = "task_lock::";
+
+    @Autowired
+    private TaskFenceMapper taskFenceMapper;
+
+    /**
+     * 任务锁的Redis key，值为持有者的fencing token
+     * @param name
+     * @return
+     */
+    public static String getLockKey(String name) {
+        return TASK_LOCK_PREFIX + name;
+    }
+
+    /**
+     * 在当前写入事务中校验fencing token，必须在事务中调用，token的行锁持有到事务结束
+     * 已有更大的token写入过时抛出TaskFencedException，事务回滚
+     */
+    public void check() {
+        String name = TaskContext.getTaskName();
+        Long token = TaskContext.getFencingToken();
+        if (name == null || token == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("fencing check of task " + name + " must run inside the write transaction");
+        }
+
+        taskFenceMapper.insertIfAbsent(name);
+        Long current = taskFenceMapper.getTokenForUpdate(name);
+        if (current != null && current > token) {
+            throw new TaskFencedException("任务" + name + "的租约已被token " + current + "接手，拒绝token " + token + "的写入");
+        }
+        if (current == null || current < token) {
+            taskFenceMapper.updateToken(name, token);
+        }
+    }
+
+    /**
+     * 当前是否在分布式任务中执行，Redis写入需要比较任务锁
+     * @return
+     */
+    public boolean isFenced() {
+        return TaskContext.getTaskName() != null && TaskContext.getFencingToken() != null;
+    }
+
+    /**
+     * 当前任务锁的Redis key，需要先判断isFenced
+     * @return
+     */
+    public String getLockKey() {
+        return getLockKey(TaskContext.getTaskName());
+    }
+
+    /**
+     * 当前任务持有的fencing token，需要先判断isFenced
+     * @return
+     */
+    public String getToken() {
+        return String.valueOf(TaskContext.getFencingToken());
+    }
+}
@@ -0,0 +1,78 @@
+package com.sky.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 分布式定时任务的执行统计，保存在Redis中，任意节点都能查到整个集群的数据
+ */
+@Component
+public class TaskMetrics {
+
+    private static final String TASK_NAMES_KEY = "task_metrics";
+    private static final String TASK_METRICS_PREFIX = "task_metrics::";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 记录一次执行
+     * @param name
+     * @param fencingToken
+     * @param durationMillis
+     * @param rows 处理的行数，任务没有返回行数时为null
+     * @param success
+     */
+    public void recordRun(String name, long fencingToken, long durationMillis, Long rows, boolean success) {
+        String key = TASK_METRICS_PREFIX + name;
+        HashOperations<String, String, String> hashOperations = stringRedisTemplate.opsForHash();
+        stringRedisTemplate.opsForSet().add(TASK_NAMES_KEY, name);
+
+        hashOperations.increment(key, success ? "runs" : "failures", 1);
+        hashOperations.increment(key, "totalDurationMillis", durationMillis);
+        Map<String, String> last = new LinkedHashMap<>();
+        last.put("lastRunTime", LocalDateTime.now().toString());
+        last.put("lastDurationMillis", String.valueOf(durationMillis));
+        last.put("lastFencingToken", String.valueOf(fencingToken));
+        if (rows != null) {
+            hashOperations.increment(key, "totalRows", rows);
+            last.put("lastRows", String.valueOf(rows));
+        }
+        hashOperations.putAll(key, last);
+    }
+
+    /**
+     * 记录一次因其它节点持有锁而跳过的执行
+     * @param name
+     */
+    public void recordSkipped(String name) {
+        stringRedisTemplate.opsForSet().add(TASK_NAMES_KEY, name);
+        stringRedisTemplate.opsForHash().increment(TASK_METRICS_PREFIX + name, "skipped", 1);
+    }
+
+    /**
+     * 查询各任务的执行统计
+     * @return
+     */
+    public Map<String, Map<String, String>> getStatistics() {
+        Map<String, Map<String, String>> statistics = new LinkedHashMap<>();
+        Set<String> names = stringRedisTemplate.opsForSet().members(TASK_NAMES_KEY);
+        if (names == null) {
+            return statistics;
+        }
+
+        HashOperations<String, String, String> hashOperations = stringRedisTemplate.opsForHash();
+        for (String name : new TreeSet<>(names)) {
+            statistics.put(name, hashOperations.entries(TASK_METRICS_PREFIX + name));
+        }
+        return statistics;
+    }
+}
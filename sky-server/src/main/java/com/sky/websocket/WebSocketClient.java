@@ -0,0 +1,167 @@
+package com.sky.websocket;
+
+import com.sky.enumeration.OverflowPolicy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个WebSocket连接，消息先进入有界队列，再逐条异步发送，慢客户端不会阻塞其它连接
+ */
+@Slf4j
+public class WebSocketClient {
+
+    @Getter
+    private final String sid;
+    @Getter
+    private final String role;
+    @Getter
+    private final String shopId;
+    @Getter
+    private final Session session;
+
+    private final BlockingQueue<String> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final WebSocketMetrics metrics;
+    //同一连接同一时间只能有一条异步发送或ping
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    //最近一次收到客户端消息或pong的时间
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    public WebSocketClient(String sid, String role, String shopId, Session session,
+                           int queueCapacity, OverflowPolicy overflowPolicy, WebSocketMetrics metrics) {
+        this.sid = sid;
+        this.role = role;
+        this.shopId = shopId;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 消息入队并尝试发送
+     * @param message
+     */
+    public void send(String message) {
+        if (!queue.offer(message)) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    queue.poll();
+                    queue.offer(message);
+                    metrics.recordDropped();
+                    log.warn("客户端{}发送队列已满，丢弃最早的消息", sid);
+                    break;
+                case DROP_NEWEST:
+                    log.warn("客户端{}发送队列已满，丢弃新消息", sid);
+                    metrics.recordDropped();
+                    return;
+                case CLOSE:
+                    log.warn("客户端{}发送队列已满，关闭连接", sid);
+                    metrics.recordDropped();
+                    close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "send queue overflow"));
+                    return;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 发送ping控制帧，客户端自动回复pong
+     * 容器在异步发送未完成时发送ping会阻塞，因此有消息正在发送时跳过本次ping；
+     * 发送ping期间占用发送标记，避免与新的消息发送交错，ping完成后继续发送积压的消息
+     */
+    public void ping() {
+        if (!sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+        } catch (IOException | RuntimeException e) {
+            log.warn("向客户端{}发送ping失败", sid, e);
+        } finally {
+            sending.set(false);
+        }
+        drain();
+    }
+
+    /**
+     * 收到客户端消息或pong时刷新活跃时间
+     */
+    public void touch() {
+        lastActiveTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 距最近一次活跃的时长，单位毫秒
+     * @return
+     */
+    public long getIdleMillis() {
+        return System.currentTimeMillis() - lastActiveTime;
+    }
+
+    /**
+     * 当前队列中等待发送的消息数
+     * @return
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 关闭连接
+     * @param reason
+     */
+    public void close(CloseReason reason) {
+        try {
+            session.close(reason);
+        } catch (IOException | RuntimeException e) {
+            log.error("关闭客户端{}连接失败", sid, e);
+        }
+    }
+
+    /**
+     * 从队列中取出一条消息异步发送，发送完成后继续发送下一条
+     */
+    private void drain() {
+        if (!session.isOpen() || !sending.compareAndSet(false, true)) {
+            return;
+        }
+
+        String message = queue.poll();
+        if (message == null) {
+            sending.set(false);
+            //释放标记后可能有新消息入队
+            if (!queue.isEmpty()) {
+                drain();
+            }
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            session.getAsyncRemote().sendText(message, result -> {
+                metrics.recordSend(System.currentTimeMillis() - start, result.isOK());
+                if (!result.isOK()) {
+                    log.error("向客户端{}发送消息失败", sid, result.getException());
+                }
+                sending.set(false);
+                drain();
+            });
+        } catch (RuntimeException e) {
+            //同步抛出异常时不会再有回调，释放标记，连接已不可用，关闭后由onClose移除，剩余消息随连接丢弃
+            log.error("向客户端{}发送消息失败，关闭连接", sid, e);
+            metrics.recordSend(System.currentTimeMillis() - start, false);
+            queue.clear();
+            sending.set(false);
+            close(new CloseReason(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "send failed"));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket心跳
+ * 定时向每个连接发送ping控制帧，关闭超过空闲时间仍未回复的连接
+ */
+@Component
+@Slf4j
+public class WebSocketHeartbeat implements DisposableBean {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WebSocketHeartbeat(WebSocketServer webSocketServer, WebSocketProperties properties) {
+        long interval = properties.getHeartbeatIntervalSeconds();
+        long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(properties.getIdleTimeoutSeconds());
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                webSocketServer.checkHeartbeat(idleTimeoutMillis);
+            } catch (RuntimeException e) {
+                //定时任务抛出异常后不会再被调度，这里只记录日志
+                log.error("WebSocket心跳检查失败", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,76 @@
+package com.sky.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket连接与发送统计
+ */
+public class WebSocketMetrics {
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sendMillis = new LongAdder();
+    private final AtomicLong maxSendMillis = new AtomicLong();
+
+    public void recordOpened() {
+        opened.increment();
+    }
+
+    public void recordClosed() {
+        closed.increment();
+    }
+
+    public void recordEvicted() {
+        evicted.increment();
+    }
+
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    /**
+     * 记录一次发送结果及耗时
+     * @param millis
+     * @param success
+     */
+    public void recordSend(long millis, boolean success) {
+        if (success) {
+            sent.increment();
+        } else {
+            failed.increment();
+        }
+        sendMillis.add(millis);
+        maxSendMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    /**
+     * 统计结果
+     * @param connections 当前连接数
+     * @param queueSize 所有连接待发送的消息总数
+     * @param maxQueueSize 单个连接待发送消息数的最大值
+     * @return
+     */
+    public Map<String, Long> snapshot(long connections, long queueSize, long maxQueueSize) {
+        long sendCount = sent.sum() + failed.sum();
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("connections", connections);
+        statistics.put("opened", opened.sum());
+        statistics.put("closed", closed.sum());
+        statistics.put("evicted", evicted.sum());
+        statistics.put("queueSize", queueSize);
+        statistics.put("maxQueueSize", maxQueueSize);
+        statistics.put("sent", sent.sum());
+        statistics.put("failed", failed.sum());
+        statistics.put("dropped", dropped.sum());
+        statistics.put("avgSendMillis", sendCount == 0 ? 0 : sendMillis.sum() / sendCount);
+        statistics.put("maxSendMillis", maxSendMillis.get());
+        return statistics;
+    }
+}
@@ -0,0 +1,196 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 集群WebSocket通知
+ * 消息先投递给本节点的连接，再通过Redis频道转发给其它节点，由各节点投递给自己的连接
+ */
+@Component
+@Slf4j
+public class WebSocketNotifier implements MessageListener, DisposableBean {
+
+    private static final String TARGET_ALL = "all";
+    private static final String TARGET_CLIENT = "client";
+    private static final String TARGET_SHOP = "shop";
+    private static final String TARGET_ROLE = "role";
+
+    private final WebSocketServer webSocketServer;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final WebSocketProperties properties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    //等待转发给其它节点的消息
+    private final Queue<JSONObject> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+
+    //已投递的消息id，用于去重
+    private final Cache<String, Boolean> delivered = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WebSocketNotifier(WebSocketServer webSocketServer, StringRedisTemplate stringRedisTemplate,
+                             WebSocketProperties properties, RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.webSocketServer = webSocketServer;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = properties;
+        //接收其它节点转发的消息
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(properties.getNotificationChannel()));
+        long interval = properties.getBatchIntervalMillis();
+        executor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 向所有节点的全部客户端发送消息
+     * @param message
+     */
+    public void notifyAll(String message) {
+        notify(TARGET_ALL, null, message);
+    }
+
+    /**
+     * 向指定客户端发送消息，客户端可能连接在任意节点
+     * @param sid
+     * @param message
+     */
+    public void notifyClient(String sid, String message) {
+        notify(TARGET_CLIENT, sid, message);
+    }
+
+    /**
+     * 向所有节点上指定店铺的客户端发送消息
+     * @param shopId
+     * @param message
+     */
+    public void notifyShop(String shopId, String message) {
+        notify(TARGET_SHOP, shopId, message);
+    }
+
+    /**
+     * 向所有节点上指定角色的客户端发送消息
+     * @param role
+     * @param message
+     */
+    public void notifyRole(String role, String message) {
+        notify(TARGET_ROLE, role, message);
+    }
+
+    private void notify(String type, String target, String content) {
+        JSONObject notification = new JSONObject();
+        notification.put("id", UUID.randomUUID().toString());
+        notification.put("type", type);
+        notification.put("target", target);
+        notification.put("content", content);
+
+        deliver(notification);
+
+        pending.offer(notification);
+        //积压达到批量大小时立即发送，不等下一次定时
+        if (pendingSize.incrementAndGet() >= properties.getBatchSize()) {
+            executor.execute(this::flush);
+        }
+    }
+
+    /**
+     * 将积压的消息按批发布到Redis频道
+     * 每条消息都带有唯一id，接收节点按id去重；不按目标和内容合并，内容相同的两次通知（如两次催单）都要送达
+     */
+    private void flush() {
+        try {
+            while (!pending.isEmpty()) {
+                List<JSONObject> batch = new ArrayList<>();
+                JSONObject notification;
+                while (batch.size() < properties.getBatchSize() && (notification = pending.poll()) != null) {
+                    pendingSize.decrementAndGet();
+                    batch.add(notification);
+                }
+
+                JSONObject body = new JSONObject();
+                body.put("nodeId", nodeId);
+                body.put("messages", batch);
+                stringRedisTemplate.convertAndSend(properties.getNotificationChannel(), body.toJSONString());
+            }
+        } catch (RuntimeException e) {
+            //定时任务抛出异常后不会再被调度，这里只记录日志
+            log.error("WebSocket通知发布失败", e);
+        }
+    }
+
+    /**
+     * 收到其它节点转发的消息，投递给本节点的连接
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            return;
+        }
+
+        List<JSONObject> messages = body.getJSONArray("messages").toJavaList(JSONObject.class);
+        for (JSONObject notification : messages) {
+            deliver(notification);
+        }
+    }
+
+    private void deliver(JSONObject notification) {
+        //同一条消息只投递一次
+        if (delivered.asMap().putIfAbsent(notification.getString("id"), Boolean.TRUE) != null) {
+            return;
+        }
+
+        String target = notification.getString("target");
+        String content = notification.getString("content");
+        switch (notification.getString("type")) {
+            case TARGET_CLIENT:
+                webSocketServer.sendToClient(target, content);
+                break;
+            case TARGET_SHOP:
+                webSocketServer.sendToShop(target, content);
+                break;
+            case TARGET_ROLE:
+                webSocketServer.sendToRole(target, content);
+                break;
+            default:
+                webSocketServer.sendToAllClient(content);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        flush();
+    }
+}
@@ -1,33 +1,62 @@
 package com.sky.websocket;
 
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * WebSocket服务
+ * 连接地址：/ws/{sid}?role=角色&shopId=店铺id，role默认为admin，shopId默认为default
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    public static final String ROLE_ADMIN = "admin";
+    public static final String DEFAULT_SHOP_ID = "default";
+
+    //存放会话对象，key为sid
+    private static final Map<String, WebSocketClient> clientMap = new ConcurrentHashMap<>();
+
+    private static final WebSocketMetrics metrics = new WebSocketMetrics();
+
+    //连接由容器创建，通过静态变量共享配置
+    private static WebSocketProperties webSocketProperties = new WebSocketProperties();
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.webSocketProperties = webSocketProperties;
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        String role = getParameter(session, "role", ROLE_ADMIN);
+        String shopId = getParameter(session, "shopId", DEFAULT_SHOP_ID);
+        log.info("客户端：{}建立连接，角色：{}，店铺：{}", sid, role, shopId);
+
+        WebSocketClient client = new WebSocketClient(sid, role, shopId, session,
+                webSocketProperties.getQueueCapacity(), webSocketProperties.getOverflowPolicy(), metrics);
+        clientMap.put(sid, client);
+        metrics.recordOpened();
     }
 
     /**
@@ -37,7 +66,18 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
+        touch(sid);
+    }
+
+    /**
+     * 收到客户端回复的pong
+     *
+     * @param sid
+     */
+    @OnMessage
+    public void onPong(PongMessage pongMessage, @PathParam("sid") String sid) {
+        touch(sid);
     }
 
     /**
@@ -46,9 +86,20 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        removeClient(sid, session);
+    }
+
+    /**
+     * 连接出错调用的方法
+     *
+     * @param sid
+     */
+    @OnError
+    public void onError(Session session, Throwable error, @PathParam("sid") String sid) {
+        log.error("客户端{}连接异常", sid, error);
+        removeClient(sid, session);
     }
 
     /**
@@ -57,15 +108,105 @@ public class WebSocketServer {
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+        sendTo(client -> true, message);
+    }
+
+    /**
+     * 向指定客户端发送消息
+     *
+     * @param sid
+     * @param message
+     */
+    public void sendToClient(String sid, String message) {
+        WebSocketClient client = clientMap.get(sid);
+        if (client != null) {
+            client.send(message);
+        }
+    }
+
+    /**
+     * 向指定店铺的客户端发送消息
+     *
+     * @param shopId
+     * @param message
+     */
+    public void sendToShop(String shopId, String message) {
+        sendTo(client -> client.getShopId().equals(shopId), message);
+    }
+
+    /**
+     * 向指定角色的客户端发送消息
+     *
+     * @param role
+     * @param message
+     */
+    public void sendToRole(String role, String message) {
+        sendTo(client -> client.getRole().equals(role), message);
+    }
+
+    /**
+     * 心跳检查：关闭超过空闲时间的连接，其余连接发送ping
+     *
+     * @param idleTimeoutMillis
+     */
+    public void checkHeartbeat(long idleTimeoutMillis) {
+        for (WebSocketClient client : clientMap.values()) {
+            if (client.getIdleMillis() > idleTimeoutMillis) {
+                log.info("客户端{}超过{}毫秒未响应，关闭连接", client.getSid(), idleTimeoutMillis);
+                metrics.recordEvicted();
+                client.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "idle timeout"));
+                removeClient(client.getSid(), client.getSession());
+            } else {
+                client.ping();
+            }
+        }
+    }
+
+    /**
+     * 连接数、队列深度及发送耗时统计
+     *
+     * @return
+     */
+    public Map<String, Long> getStatistics() {
+        long queueSize = 0;
+        long maxQueueSize = 0;
+        for (WebSocketClient client : clientMap.values()) {
+            int size = client.getQueueSize();
+            queueSize += size;
+            maxQueueSize = Math.max(maxQueueSize, size);
+        }
+        return metrics.snapshot(clientMap.size(), queueSize, maxQueueSize);
+    }
+
+    private void touch(String sid) {
+        WebSocketClient client = clientMap.get(sid);
+        if (client != null) {
+            client.touch();
+        }
+    }
+
+    private void sendTo(Predicate<WebSocketClient> filter, String message) {
+        for (WebSocketClient client : clientMap.values()) {
+            if (filter.test(client)) {
+                //消息进入各连接自己的队列异步发送，不会被慢客户端阻塞
+                client.send(message);
             }
         }
     }
 
+    /**
+     * 只移除与当前会话对应的连接，避免同一sid重连后被旧连接的关闭事件移除
+     */
+    private void removeClient(String sid, Session session) {
+        WebSocketClient client = clientMap.get(sid);
+        if (client != null && client.getSession() == session && clientMap.remove(sid, client)) {
+            metrics.recordClosed();
+        }
+    }
+
+    private String getParameter(Session session, String name, String defaultValue) {
+        List<String> values = session.getRequestParameterMap().get(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+
 }
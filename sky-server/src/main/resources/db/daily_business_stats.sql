@@ -0,0 +1,33 @@
+-- 每日营业数据汇总表
+create table if not exists daily_business_stats
+(
+    stat_date         date                     not null comment '统计日期' primary key,
+    turnover          decimal(12, 2) default 0 not null comment '营业额',
+    total_order_count int            default 0 not null comment '订单总数',
+    valid_order_count int            default 0 not null comment '有效订单数',
+    new_users         int            default 0 not null comment '新增用户数',
+    update_time       datetime                 null comment '更新时间'
+) comment '每日营业数据汇总';
+
+-- 根据历史订单和用户数据初始化汇总表
+insert into daily_business_stats(stat_date, turnover, total_order_count, valid_order_count, update_time)
+select date(order_time),
+       sum(case when status = 5 then amount else 0 end),
+       count(id),
+       sum(case when status = 5 then 1 else 0 end),
+       now()
+from orders
+where order_time < curdate()
+group by date(order_time)
+on duplicate key update turnover          = values(turnover),
+                        total_order_count = values(total_order_count),
+                        valid_order_count = values(valid_order_count),
+                        update_time       = values(update_time);
+
+insert into daily_business_stats(stat_date, new_users, update_time)
+select date(create_time), count(id), now()
+from user
+where create_time < curdate()
+group by date(create_time)
+on duplicate key update new_users   = values(new_users),
+                        update_time = values(update_time);
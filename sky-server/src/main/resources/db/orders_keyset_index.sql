@@ -0,0 +1,9 @@
+-- 订单分页查询索引
+-- 管理端订单搜索按下单时间倒序翻页，游标为 (order_time, id)
+create index idx_orders_order_time_id on orders (order_time, id);
+-- 按状态筛选订单搜索，以及超时、派送中订单的定时处理
+create index idx_orders_status_order_time_id on orders (status, order_time, id);
+-- 用户端历史订单
+create index idx_orders_user_id_order_time_id on orders (user_id, order_time, id);
+-- 订单号前缀匹配，同时用于支付回调查询
+create index idx_orders_number on orders (number);
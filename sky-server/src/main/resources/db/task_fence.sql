@@ -0,0 +1,7 @@
+-- 分布式任务fencing token表
+-- 任务的每次写入事务先把token推进到当前持有者的token，token更小的过期持有者写入时被拒绝
+create table if not exists task_fence
+(
+    name  varchar(64) not null comment '任务名' primary key,
+    token bigint      not null comment '已写入的最大fencing token'
+) comment '分布式任务fencing token';
@@ -0,0 +1,122 @@
+package com.sky.config;
+
+import com.sky.entity.DishFlavor;
+import com.sky.properties.RedisSerializerProperties;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 各序列化格式在菜品列表缓存上的数据大小和序列化、反序列化耗时
+ */
+class RedisSerializerBenchmarkTest {
+
+    //一个分类下的菜品数量，每个菜品带两种口味
+    private static final int DISH_COUNT = 30;
+    private static final int WARMUP_ROUNDS = 2000;
+    private static final int MEASURE_ROUNDS = 5000;
+
+    @Test
+    void compareFormats() {
+        List<DishVO> dishes = createDishes();
+        int jdkSize = 0;
+        int smileLz4Size = 0;
+
+        System.out.printf("%-12s %10s %12s %12s%n", "format", "bytes", "ser(us)", "de(us)");
+        for (String format : Arrays.asList("jdk", "json", "smile")) {
+            for (int threshold : new int[]{0, 1024}) {
+                RedisSerializer<Object> serializer = RedisConfiguration.createValueSerializer(properties(format, threshold));
+                byte[] bytes = serializer.serialize(dishes);
+                assertEquals(dishes, serializer.deserialize(bytes));
+
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    serializer.deserialize(serializer.serialize(dishes));
+                }
+                long serNanos = 0;
+                long deNanos = 0;
+                for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    byte[] data = serializer.serialize(dishes);
+                    long middle = System.nanoTime();
+                    serializer.deserialize(data);
+                    long end = System.nanoTime();
+                    serNanos += middle - start;
+                    deNanos += end - middle;
+                }
+
+                String name = threshold > 0 ? format + "+lz4" : format;
+                System.out.printf("%-12s %10d %12.1f %12.1f%n", name, bytes.length,
+                        serNanos / 1000.0 / MEASURE_ROUNDS, deNanos / 1000.0 / MEASURE_ROUNDS);
+                if ("jdk".equals(format) && threshold == 0) {
+                    jdkSize = bytes.length;
+                }
+                if ("smile".equals(format) && threshold > 0) {
+                    smileLz4Size = bytes.length;
+                }
+            }
+        }
+        assertTrue(smileLz4Size < jdkSize);
+    }
+
+    @Test
+    void readsValuesWrittenByJdkSerializer() {
+        List<DishVO> dishes = createDishes();
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(dishes);
+
+        for (int threshold : new int[]{0, 1024}) {
+            RedisSerializer<Object> serializer = RedisConfiguration.createValueSerializer(properties("smile", threshold));
+            assertEquals(dishes, serializer.deserialize(legacy));
+            assertEquals(1, serializer.deserialize(new JdkSerializationRedisSerializer().serialize(1)));
+        }
+    }
+
+    @Test
+    void rejectsTypesOutsideAllowList() {
+        RedisSerializer<Object> serializer = RedisConfiguration.createValueSerializer(properties("json", 0));
+        //不压缩时同样带1字节格式标记
+        byte[] bytes = "\0{\"@class\":\"java.lang.ProcessBuilder\"}".getBytes();
+        assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    private static RedisSerializerProperties properties(String format, int compressThreshold) {
+        RedisSerializerProperties properties = new RedisSerializerProperties();
+        properties.setFormat(format);
+        properties.setCompressThreshold(compressThreshold);
+        return properties;
+    }
+
+    private static List<DishVO> createDishes() {
+        LocalDateTime now = LocalDateTime.of(2024, 6, 1, 12, 0);
+        List<DishVO> dishes = new ArrayList<>();
+        for (long i = 1; i <= DISH_COUNT; i++) {
+            List<DishFlavor> flavors = new ArrayList<>();
+            flavors.add(DishFlavor.builder().id(i * 2).dishId(i).name("甜味").value("[\"无糖\",\"少糖\",\"半糖\",\"多糖\",\"全糖\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 2 + 1).dishId(i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build());
+            dishes.add(DishVO.builder()
+                    .id(i)
+                    .name("菜品" + i)
+                    .categoryId(11L)
+                    .price(new BigDecimal("38.00").add(BigDecimal.valueOf(i)))
+                    .image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/dish/" + i + ".png")
+                    .description("精选食材，现点现做，口味" + i)
+                    .status(1)
+                    .updateTime(now.plusMinutes(i))
+                    .categoryName("热销菜品")
+                    .flavors(flavors)
+                    .build());
+        }
+        return dishes;
+    }
+}
@@ -0,0 +1,133 @@
+package com.sky.converter;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.entity.ShoppingCart;
+import com.sky.vo.OrderVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+
+import java.beans.PropertyDescriptor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单相关对象转换改用MapStruct前后的耗时对比，修改前为 BeanUtils.copyProperties
+ */
+class OrderConverterBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 200000;
+    private static final int MEASURE_ROUNDS = 1000000;
+
+    private final OrderConverter orderConverter = OrderConverter.INSTANCE;
+
+    @Test
+    void ordersToOrderVO() {
+        Orders orders = createOrders();
+        Function<Orders, OrderVO> before = source -> {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(source, orderVO);
+            return orderVO;
+        };
+        Function<Orders, OrderVO> after = orderConverter::toOrderVO;
+
+        assertSameProperties(Orders.class, before.apply(orders), after.apply(orders));
+        compare("Orders -> OrderVO", orders, before, after);
+    }
+
+    @Test
+    void shoppingCartToOrderDetail() {
+        ShoppingCart shoppingCart = createShoppingCart();
+        Function<ShoppingCart, OrderDetail> before = source -> {
+            OrderDetail orderDetail = new OrderDetail();
+            BeanUtils.copyProperties(source, orderDetail, "id");
+            return orderDetail;
+        };
+        Function<ShoppingCart, OrderDetail> after = orderConverter::toOrderDetail;
+
+        assertEquals(before.apply(shoppingCart), after.apply(shoppingCart));
+        compare("ShoppingCart -> OrderDetail", shoppingCart, before, after);
+    }
+
+    private static <S, T> void compare(String name, S source, Function<S, T> before, Function<S, T> after) {
+        measure(source, before, WARMUP_ROUNDS);
+        measure(source, after, WARMUP_ROUNDS);
+        double beforeNanos = measure(source, before, MEASURE_ROUNDS);
+        double afterNanos = measure(source, after, MEASURE_ROUNDS);
+        System.out.printf("%-28s BeanUtils %8.1f ns/op, MapStruct %8.1f ns/op%n", name, beforeNanos, afterNanos);
+        assertTrue(afterNanos < beforeNanos);
+    }
+
+    /**
+     * 返回平均每次转换的纳秒数
+     */
+    private static <S, T> double measure(S source, Function<S, T> function, int rounds) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            //使用转换结果，避免被JIT优化掉
+            sink += System.identityHashCode(function.apply(source)) & 1;
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink >= 0);
+        return (double) elapsed / rounds;
+    }
+
+    private static void assertSameProperties(Class<?> type, Object expected, Object actual) {
+        BeanWrapper expectedWrapper = new BeanWrapperImpl(expected);
+        BeanWrapper actualWrapper = new BeanWrapperImpl(actual);
+        for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(type)) {
+            if (descriptor.getReadMethod() == null) {
+                continue;
+            }
+            String property = descriptor.getName();
+            assertEquals(expectedWrapper.getPropertyValue(property), actualWrapper.getPropertyValue(property), property);
+        }
+    }
+
+    private static Orders createOrders() {
+        LocalDateTime orderTime = LocalDateTime.of(2024, 6, 1, 12, 0);
+        return Orders.builder()
+                .id(1001L)
+                .number("6513472339271680001")
+                .status(Orders.TO_BE_CONFIRMED)
+                .userId(8L)
+                .addressBookId(3L)
+                .orderTime(orderTime)
+                .checkoutTime(orderTime.plusMinutes(1))
+                .payMethod(1)
+                .payStatus(Orders.PAID)
+                .amount(new BigDecimal("86.00"))
+                .remark("少放辣")
+                .userName("张三")
+                .phone("13800000000")
+                .address("北京市海淀区中关村大街1号")
+                .consignee("张三")
+                .estimatedDeliveryTime(orderTime.plusMinutes(45))
+                .deliveryStatus(1)
+                .packAmount(2)
+                .tablewareNumber(2)
+                .tablewareStatus(0)
+                .build();
+    }
+
+    private static ShoppingCart createShoppingCart() {
+        return ShoppingCart.builder()
+                .id(21L)
+                .name("宫保鸡丁")
+                .userId(8L)
+                .dishId(46L)
+                .dishFlavor("微辣")
+                .number(2)
+                .amount(new BigDecimal("38.00"))
+                .image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/dish/46.png")
+                .createTime(LocalDateTime.of(2024, 6, 1, 11, 50))
+                .build();
+    }
+}
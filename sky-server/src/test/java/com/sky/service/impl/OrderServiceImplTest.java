@@ -0,0 +1,103 @@
+package com.sky.service.impl;
+
+import com.github.pagehelper.Page;
+import com.github.pagehelper.PageHelper;
+import com.sky.constant.MessageConstant;
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.result.PageResult;
+import com.sky.vo.OrderVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderServiceImplTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetailMapper orderDetailMapper;
+    @InjectMocks
+    private OrderServiceImpl orderService;
+
+    @AfterEach
+    void clearPage() {
+        PageHelper.clearPage();
+    }
+
+    /**
+     * 订单分页查询的SQL条数与每页条数无关：一条分页查询加一条批量明细查询
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    void pageQueryIssuesConstantQueryCount(int pageSize) {
+        Page<Orders> page = new Page<>(1, pageSize);
+        List<OrderDetail> details = new ArrayList<>();
+        for (long id = 1; id <= pageSize; id++) {
+            page.add(Orders.builder().id(id).build());
+            details.add(OrderDetail.builder().orderId(id).name("dish" + id).number(1).build());
+            details.add(OrderDetail.builder().orderId(id).name("setmeal" + id).number(2).build());
+        }
+        page.setTotal(pageSize);
+        when(orderMapper.pageQuery(any())).thenReturn(page);
+        when(orderDetailMapper.getByOrderIds(anyList())).thenReturn(details);
+
+        OrdersPageQueryDTO ordersPageQueryDTO = new OrdersPageQueryDTO();
+        ordersPageQueryDTO.setPage(1);
+        ordersPageQueryDTO.setPageSize(pageSize);
+        PageResult pageResult = orderService.pageQuery(ordersPageQueryDTO);
+
+        verify(orderMapper, times(1)).pageQuery(any());
+        verify(orderDetailMapper, times(1)).getByOrderIds(anyList());
+        verifyNoMoreInteractions(orderMapper, orderDetailMapper);
+
+        assertEquals(pageSize, pageResult.getRecords().size());
+        for (Object record : pageResult.getRecords()) {
+            assertEquals(2, ((OrderVO) record).getOrderDetailList().size());
+        }
+    }
+
+    /**
+     * 游标只传了下单时间或id之一时拒绝查询，不能返回第一页
+     */
+    @Test
+    void pageQueryRejectsIncompleteCursor() {
+        OrdersPageQueryDTO onlyId = new OrdersPageQueryDTO();
+        onlyId.setPageSize(10);
+        onlyId.setLastId(100L);
+        OrdersPageQueryDTO onlyTime = new OrdersPageQueryDTO();
+        onlyTime.setPageSize(10);
+        onlyTime.setLastOrderTime(LocalDateTime.of(2024, 6, 1, 12, 0));
+
+        for (OrdersPageQueryDTO ordersPageQueryDTO : new OrdersPageQueryDTO[]{onlyId, onlyTime}) {
+            OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                    () -> orderService.pageQuery(ordersPageQueryDTO));
+            assertEquals(MessageConstant.ORDER_CURSOR_INCOMPLETE, e.getMessage());
+        }
+        verifyNoInteractions(orderMapper, orderDetailMapper);
+    }
+}
@@ -0,0 +1,277 @@
+package com.sky.service.impl;
+
+import com.sky.cache.PriceIndex;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.context.BaseContext;
+import com.sky.dto.OrdersSubmitDTO;
+import com.sky.entity.AddressBook;
+import com.sky.entity.Orders;
+import com.sky.entity.ShoppingCart;
+import com.sky.exception.BaseException;
+import com.sky.mapper.AddressBookMapper;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.DailyBusinessStatsService;
+import com.sky.service.OrderStatusCountService;
+import com.sky.service.OrderTimeoutService;
+import com.sky.service.ShoppingCartService;
+import com.sky.utils.OrderNumberGenerator;
+import com.sky.vo.OrderSubmitVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * 同一用户并发重复下单：同一令牌或不带令牌时每轮只能生成一个订单，并统计下单耗时的p99
+ * Redis以内存Map模拟，语义与下单用到的命令一致
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderSubmitConcurrencyTest {
+
+    private static final Long USER_ID = 8L;
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+    //插入订单的模拟耗时，放大并发窗口
+    private static final long INSERT_MILLIS = 2;
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetailMapper orderDetailMapper;
+    @Mock
+    private AddressBookMapper addressBookMapper;
+    @Mock
+    private ShoppingCartService shoppingCartService;
+    @Mock
+    private DailyBusinessStatsService dailyBusinessStatsService;
+    @Mock
+    private OrderTimeoutService orderTimeoutService;
+    @Mock
+    private OrderStatusCountService orderStatusCountService;
+    @Mock
+    private OrderNumberGenerator orderNumberGenerator;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private PriceIndex priceIndex;
+    @InjectMocks
+    private OrderServiceImpl orderService;
+
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final AtomicReference<List<ShoppingCart>> cart = new AtomicReference<>(Collections.emptyList());
+    private final AtomicLong orderIds = new AtomicLong();
+    private final AtomicInteger inserted = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS);
+        ReflectionTestUtils.setField(orderService, "deliveryFee", new BigDecimal("6"));
+
+        when(addressBookMapper.getById(any())).thenReturn(AddressBook.builder().id(1L).phone("13800000000").build());
+        when(priceIndex.getDish(anyLong())).thenReturn(new PriceIndex.Item(new BigDecimal("38.00"), StatusConstant.ENABLE));
+        when(orderNumberGenerator.nextNumber()).thenAnswer(invocation -> String.valueOf(System.nanoTime()));
+        //购物车取出后即为空，与Redis中原子取出的行为一致
+        when(shoppingCartService.drainByUserId(USER_ID)).thenAnswer(invocation -> cart.getAndSet(Collections.emptyList()));
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        doAnswer(invocation -> {
+            Thread.sleep(INSERT_MILLIS);
+            Orders orders = invocation.getArgument(0);
+            orders.setId(orderIds.incrementAndGet());
+            inserted.incrementAndGet();
+            return null;
+        }).when(orderMapper).insert(any(Orders.class));
+
+        mockRedis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void sameTokenCreatesOneOrderPerRound() throws Exception {
+        List<Long> latencies = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            resetCart();
+            BaseContext.setCurrentId(USER_ID);
+            String token = orderService.getSubmitToken();
+
+            List<Result> results = submitConcurrently(token);
+            Set<Long> orderIdsInRound = new HashSet<>();
+            for (Result result : results) {
+                latencies.add(result.nanos);
+                if (result.orderSubmitVO != null) {
+                    orderIdsInRound.add(result.orderSubmitVO.getId());
+                } else {
+                    assertEquals(MessageConstant.ORDER_SUBMITTING, result.error.getMessage());
+                }
+            }
+            //成功的请求都返回同一个订单
+            assertEquals(1, orderIdsInRound.size());
+            assertEquals(round + 1, inserted.get());
+        }
+        report("token", latencies);
+    }
+
+    @Test
+    void userLockCreatesOneOrderPerRound() throws Exception {
+        List<Long> latencies = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            resetCart();
+
+            List<Result> results = submitConcurrently(null);
+            int succeeded = 0;
+            for (Result result : results) {
+                latencies.add(result.nanos);
+                if (result.orderSubmitVO != null) {
+                    succeeded++;
+                } else {
+                    //锁释放后到达的请求取到的是已清空的购物车
+                    String message = result.error.getMessage();
+                    assertTrue(MessageConstant.ORDER_SUBMITTING.equals(message)
+                            || MessageConstant.SHOPPING_CART_IS_NULL.equals(message), message);
+                }
+            }
+            assertEquals(1, succeeded);
+            assertEquals(round + 1, inserted.get());
+        }
+        report("user lock", latencies);
+    }
+
+    private List<Result> submitConcurrently(String token) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                BaseContext.setCurrentId(USER_ID);
+                OrdersSubmitDTO ordersSubmitDTO = new OrdersSubmitDTO();
+                ordersSubmitDTO.setAddressBookId(1L);
+                ordersSubmitDTO.setToken(token);
+                start.await();
+                long begin = System.nanoTime();
+                try {
+                    OrderSubmitVO orderSubmitVO = orderService.submitOrder(ordersSubmitDTO);
+                    return new Result(orderSubmitVO, null, System.nanoTime() - begin);
+                } catch (BaseException e) {
+                    return new Result(null, e, System.nanoTime() - begin);
+                } finally {
+                    BaseContext.removeCurrentId();
+                }
+            }));
+        }
+        start.countDown();
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private void resetCart() {
+        List<ShoppingCart> shoppingCartList = new ArrayList<>();
+        shoppingCartList.add(ShoppingCart.builder().name("宫保鸡丁").userId(USER_ID).dishId(46L).number(2).build());
+        cart.set(shoppingCartList);
+    }
+
+    private static void report(String name, List<Long> latencies) {
+        Collections.sort(latencies);
+        long p50 = latencies.get(latencies.size() / 2);
+        long p99 = latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+        System.out.printf("%-10s requests %d, p50 %.2f ms, p99 %.2f ms%n",
+                name, latencies.size(), p50 / 1e6, p99 / 1e6);
+    }
+
+    /**
+     * 以ConcurrentHashMap模拟下单用到的Redis命令，每个命令都是原子的
+     */
+    @SuppressWarnings("unchecked")
+    private void mockRedis() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        doAnswer(invocation -> {
+            redis.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(valueOperations).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class)))
+                .thenAnswer(invocation -> redis.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(stringRedisTemplate.delete(anyString()))
+                .thenAnswer(invocation -> redis.remove((String) invocation.getArgument(0)) != null);
+        //CLAIM_SUBMIT_TOKEN_SCRIPT：值为ARGV[1]时改为ARGV[2]，返回原来的值
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), eq("new"), eq("processing")))
+                .thenAnswer(invocation -> {
+                    String key = ((List<String>) invocation.getArgument(1)).get(0);
+                    AtomicReference<String> previous = new AtomicReference<>();
+                    redis.computeIfPresent(key, (k, value) -> {
+                        previous.set(value);
+                        return "new".equals(value) ? "processing" : value;
+                    });
+                    return previous.get();
+                });
+    }
+
+    private static class Result {
+        private final OrderSubmitVO orderSubmitVO;
+        private final BaseException error;
+        private final long nanos;
+
+        Result(OrderSubmitVO orderSubmitVO, BaseException error, long nanos) {
+            this.orderSubmitVO = orderSubmitVO;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+}
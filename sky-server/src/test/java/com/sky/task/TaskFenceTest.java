@@ -0,0 +1,89 @@
+package com.sky.task;
+
+import com.sky.context.TaskContext;
+import com.sky.exception.TaskFencedException;
+import com.sky.mapper.TaskFenceMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TaskFenceTest {
+
+    private static final String TASK = "processTimeoutOrder";
+
+    @Mock
+    private TaskFenceMapper taskFenceMapper;
+    @InjectMocks
+    private TaskFence taskFence;
+
+    @BeforeEach
+    void beginTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    @AfterEach
+    void clear() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TaskContext.removeTask();
+    }
+
+    @Test
+    void newerTokenAdvancesFence() {
+        TaskContext.setTask(TASK, 8L);
+        when(taskFenceMapper.getTokenForUpdate(TASK)).thenReturn(7L);
+
+        taskFence.check();
+
+        verify(taskFenceMapper).updateToken(TASK, 8L);
+    }
+
+    @Test
+    void sameTokenWritesAgainWithoutUpdate() {
+        TaskContext.setTask(TASK, 8L);
+        when(taskFenceMapper.getTokenForUpdate(TASK)).thenReturn(8L);
+
+        taskFence.check();
+
+        verify(taskFenceMapper, never()).updateToken(anyString(), anyLong());
+    }
+
+    @Test
+    void staleHolderIsRejected() {
+        //租约过期后其它节点以token 8接手并已写入，原持有者token 7的写入被拒绝
+        TaskContext.setTask(TASK, 7L);
+        when(taskFenceMapper.getTokenForUpdate(TASK)).thenReturn(8L);
+
+        assertThrows(TaskFencedException.class, () -> taskFence.check());
+        verify(taskFenceMapper, never()).updateToken(anyString(), anyLong());
+    }
+
+    @Test
+    void requiresTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TaskContext.setTask(TASK, 7L);
+
+        assertThrows(IllegalStateException.class, () -> taskFence.check());
+        verifyNoInteractions(taskFenceMapper);
+    }
+
+    @Test
+    void outsideDistributedTaskIsNotChecked() {
+        taskFence.check();
+
+        verifyNoInteractions(taskFenceMapper);
+    }
+}